@@ -25,6 +25,7 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRateLimiter;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.FilePath;
@@ -98,7 +99,14 @@ public class BitbucketBuildStatusNotifications {
 
     private static void sendNotifications(Run<?, ?> build, TaskListener listener)
             throws IOException, InterruptedException {
-        final SCMSource s = SCMSource.SourceByItem.findSource(build.getParent());
+        // queue behind the other requests of the job rather than behind the scans sharing the credentials
+        try (BitbucketRateLimiter.LaneScope lane = BitbucketRateLimiter.enterLane(build.getParent().getFullName())) {
+            sendNotifications(build, listener, SCMSource.SourceByItem.findSource(build.getParent()));
+        }
+    }
+
+    private static void sendNotifications(Run<?, ?> build, TaskListener listener, SCMSource s)
+            throws IOException, InterruptedException {
         if (!(s instanceof BitbucketSCMSource)) {
             return;
         }
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.model.Items;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * What the last scan of an organization saw: when it ran, when the last scan that listed every repository ran, the
+ * credentials it ran with and the names of the repositories. A later scan with the same credentials only needs to
+ * list the repositories that changed since, and adds them to the names it remembers.
+ * <p>
+ * The state is persisted next to the owner of the navigator so that it survives restarts.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketOrganizationScanState {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketOrganizationScanState.class.getName());
+
+    /**
+     * When the last successful scan started, in milliseconds since the epoch.
+     */
+    private long lastScan;
+
+    /**
+     * When the last successful scan listing every repository started, in milliseconds since the epoch.
+     */
+    private long lastFullScan;
+
+    /**
+     * The names of the repositories seen by the last successful scan or {@code null} if there was none.
+     */
+    @CheckForNull
+    private List<String> repositories;
+
+    /**
+     * The query on the repository names the repositories were listed with.
+     */
+    @CheckForNull
+    private String query;
+
+    /**
+     * The id and user name of the credentials the repositories were listed with, which decide the repositories that
+     * are visible.
+     */
+    @CheckForNull
+    private String credentials;
+
+    /**
+     * Reads a persisted state.
+     *
+     * @param file the file.
+     * @return the state, empty if the file does not exist or cannot be read.
+     */
+    @NonNull
+    public static BitbucketOrganizationScanState load(@NonNull File file) {
+        XmlFile xml = new XmlFile(Items.XSTREAM2, file);
+        if (xml.exists()) {
+            try {
+                Object state = xml.read();
+                if (state instanceof BitbucketOrganizationScanState) {
+                    return (BitbucketOrganizationScanState) state;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Discarding unreadable organization scan state " + file, e);
+            }
+        }
+        return new BitbucketOrganizationScanState();
+    }
+
+    /**
+     * Persists this state.
+     *
+     * @param file the file.
+     */
+    public void save(@NonNull File file) {
+        try {
+            new XmlFile(Items.XSTREAM2, file).write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the organization scan state " + file, e);
+        }
+    }
+
+    public long getLastScan() {
+        return lastScan;
+    }
+
+    public long getLastFullScan() {
+        return lastFullScan;
+    }
+
+    /**
+     * Returns the names of the repositories seen by the last successful scan.
+     *
+     * @return the names of the repositories or {@code null} if there was no successful scan yet.
+     */
+    @CheckForNull
+    public List<String> getRepositories() {
+        return repositories == null ? null : Collections.unmodifiableList(repositories);
+    }
+
+    /**
+     * Returns the query on the repository names the repositories were listed with.
+     *
+     * @return the query or {@code null} if there was no successful scan yet.
+     */
+    @CheckForNull
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the id and user name of the credentials the repositories were listed with.
+     *
+     * @return the credentials or {@code null} if there was no successful scan yet.
+     */
+    @CheckForNull
+    public String getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Records a successful scan.
+     *
+     * @param start        when the scan started, in milliseconds since the epoch.
+     * @param full         {@code true} if the scan listed every repository.
+     * @param query        the query on the repository names the repositories were listed with.
+     * @param credentials  the id and user name of the credentials the repositories were listed with.
+     * @param repositories the names of the repositories the scan saw.
+     */
+    public void scanned(long start, boolean full, @NonNull String query, @NonNull String credentials,
+                        @NonNull Collection<String> repositories) {
+        this.lastScan = start;
+        if (full) {
+            this.lastFullScan = start;
+        }
+        this.query = query;
+        this.credentials = credentials;
+        this.repositories = new ArrayList<>(repositories);
+    }
+}
@@ -23,15 +23,19 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket;
 
+import com.cloudbees.jenkins.plugins.bitbucket.api.AbstractBitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiFactory;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.AbstractBitbucketEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointExecutors;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRateLimiter;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerProject;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsNameProvider;
@@ -58,17 +62,29 @@ import hudson.plugins.mercurial.traits.MercurialBrowserSCMSourceTrait;
 import hudson.security.ACL;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectStreamException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -95,6 +111,9 @@ import jenkins.scm.impl.trait.Discovery;
 import jenkins.scm.impl.trait.RegexSCMSourceFilterTrait;
 import jenkins.scm.impl.trait.Selection;
 import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
 import org.apache.commons.lang.StringUtils;
 import org.jenkins.ui.icon.Icon;
 import org.jenkins.ui.icon.IconSet;
@@ -110,6 +129,15 @@ import org.kohsuke.stapler.QueryParameter;
 public class BitbucketSCMNavigator extends SCMNavigator {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketSCMSource.class.getName());
+    /**
+     * How many hours an organization may go with incremental scans before a scan lists every repository again.
+     */
+    private static final int FULL_SCAN_INTERVAL_HOURS = Integer.getInteger(
+            BitbucketSCMNavigator.class.getName() + ".fullScanIntervalHours", 24);
+    /**
+     * How far before the last scan an incremental scan looks for changes, to allow for clock skew with the server.
+     */
+    private static final long CHANGE_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
 
     @NonNull
     private String serverUrl;
@@ -466,26 +494,248 @@ public class BitbucketSCMNavigator extends SCMNavigator {
             SourceFactory sourceFactory = new SourceFactory(request);
             WitnessImpl witness = new WitnessImpl(listener);
 
-            BitbucketApi bitbucket = BitbucketApiFactory.newInstance(serverUrl, credentials, repoOwner, null);
+            AbstractBitbucketApi bitbucket =
+                    AbstractBitbucketApi.of(BitbucketApiFactory.newInstance(serverUrl, credentials, repoOwner, null));
             BitbucketTeam team = bitbucket.getTeam();
-            List<? extends BitbucketRepository> repositories;
-            if (team != null) {
-                // Navigate repositories of the team
-                listener.getLogger().format("Looking up repositories of team %s%n", repoOwner);
-                repositories = bitbucket.getRepositories();
+            // only scans of the whole organization are incremental, they are the ones that can vouch for every name
+            File stateFile = observer.getIncludes() == null ? getScanStateFile(observer.getContext()) : null;
+            BitbucketOrganizationScanState state =
+                    stateFile == null ? null : BitbucketOrganizationScanState.load(stateFile);
+            long scanStart = System.currentTimeMillis();
+            BitbucketNameQuery names = NameQueryPushdown.forRepositories(traits);
+            // other credentials may see other repositories, only the ones seen with these credentials can be trusted
+            String stateCredentials = credentials == null
+                    ? ""
+                    : credentials.getId() + "::" + credentials.getUsername();
+            List<String> repositories = state == null || !names.toString().equals(state.getQuery())
+                    || !stateCredentials.equals(state.getCredentials())
+                    ? null
+                    : listChangedRepositories(bitbucket, team == null ? UserRoleInRepository.OWNER : null, state,
+                    scanStart, listener);
+            boolean full = repositories == null;
+            if (full) {
+                List<? extends BitbucketRepository> listed;
+                if (team != null) {
+                    // Navigate repositories of the team
+                    listener.getLogger().format("Looking up repositories of team %s%n", repoOwner);
+                    listed = names.isMatchAll()
+                            ? bitbucket.getRepositories()
+                            : bitbucket.getRepositories(null, names);
+                } else {
+                    // Navigate the repositories of the repoOwner as a user
+                    listener.getLogger().format("Looking up repositories of user %s%n", repoOwner);
+                    listed = names.isMatchAll()
+                            ? bitbucket.getRepositories(UserRoleInRepository.OWNER)
+                            : bitbucket.getRepositories(UserRoleInRepository.OWNER, names);
+                }
+                repositories = new ArrayList<>(listed.size());
+                for (BitbucketRepository repo : listed) {
+                    repositories.add(repo.getRepositoryName());
+                }
+            }
+            // a remembered repository may have been deleted, renamed or hidden since, only a full listing would tell
+            Set<String> missing = full ? null : Collections.synchronizedSet(new HashSet<String>());
+            BitbucketEndpointExecutors executors =
+                    BitbucketEndpointConfiguration.get().getHttpClient(serverUrl).getExecutors();
+            if (executors.getSourceScanConcurrency() > 1 && observer.getIncludes() == null) {
+                processConcurrently(request, sourceFactory, witness, repositories, missing, executors);
             } else {
-                // Navigate the repositories of the repoOwner as a user
-                listener.getLogger().format("Looking up repositories of user %s%n", repoOwner);
-                repositories = bitbucket.getRepositories(UserRoleInRepository.OWNER);
+                for (String repositoryName : repositories) {
+                    if (process(request, repositoryName, sourceFactory, witness, missing)) {
+                        listener.getLogger().format(
+                                "%d repositories were processed (query completed)%n", witness.getCount()
+                        );
+                    }
+                }
+            }
+            listener.getLogger().format("%d repositories were processed%n", witness.getCount());
+            if (missing != null && !missing.isEmpty()) {
+                listener.getLogger().format("Forgetting %d repositories that no longer exist or are not visible: %s%n",
+                        missing.size(), new TreeSet<>(missing));
+                repositories = new ArrayList<>(repositories);
+                repositories.removeAll(missing);
+            }
+            if (state != null) {
+                state.scanned(scanStart, full, names.toString(), stateCredentials, repositories);
+                state.save(stateFile);
+            }
+        }
+    }
+
+    /**
+     * Lists the repositories to visit without listing every repository: the ones the last scan saw together with the
+     * ones that changed since.
+     *
+     * @param bitbucket the API client.
+     * @param role      the role of the owner in the repositories or {@code null} for a team.
+     * @param state     the state of the last scan.
+     * @param scanStart when this scan started.
+     * @param listener  the listener.
+     * @return the names of the repositories in name order or {@code null} if every repository must be listed.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    private List<String> listChangedRepositories(AbstractBitbucketApi bitbucket, @CheckForNull UserRoleInRepository role,
+                                                 BitbucketOrganizationScanState state, long scanStart,
+                                                 TaskListener listener)
+            throws IOException, InterruptedException {
+        List<String> known = state.getRepositories();
+        if (known == null
+                || scanStart - state.getLastFullScan() >= TimeUnit.HOURS.toMillis(FULL_SCAN_INTERVAL_HOURS)) {
+            return null;
+        }
+        List<? extends BitbucketRepository> changed =
+                bitbucket.getRepositoriesChangedSince(role, state.getLastScan() - CHANGE_MARGIN_MILLIS);
+        if (changed == null) {
+            return null;
+        }
+        listener.getLogger().format("Looking up repositories of %s changed since the last scan: %d changed%n",
+                repoOwner, changed.size());
+        Set<String> names = new TreeSet<>(known);
+        for (BitbucketRepository repo : changed) {
+            names.add(repo.getRepositoryName());
+        }
+        return new ArrayList<>(names);
+    }
+
+    @CheckForNull
+    private File getScanStateFile(@CheckForNull SCMSourceOwner owner) {
+        File rootDir = owner == null ? null : owner.getRootDir();
+        return rootDir == null ? null : new File(rootDir, "bitbucket-org-scan-" + Util.getDigestOf(id()) + ".xml");
+    }
+
+    /**
+     * Processes a repository.
+     *
+     * @param request        the request.
+     * @param repositoryName the name of the repository.
+     * @param sourceFactory  the source factory.
+     * @param witness        the witness to report the outcome to.
+     * @param missing        the names of the repositories that were not found, or {@code null} if a repository that
+     *                       is not found fails the scan.
+     * @return {@code true} if the request is completed.
+     * @throws IOException          if processing the repository failed.
+     * @throws InterruptedException if interrupted while processing the repository.
+     */
+    private static boolean process(BitbucketSCMNavigatorRequest request, String repositoryName,
+                                   SourceFactory sourceFactory, SCMNavigatorRequest.Witness witness,
+                                   @CheckForNull Set<String> missing) throws IOException, InterruptedException {
+        try {
+            return request.process(repositoryName, sourceFactory, null, witness);
+        } catch (IOException e) {
+            if (missing == null || !isNotFound(e)) {
+                throw e;
+            }
+            missing.add(repositoryName);
+            return false;
+        }
+    }
+
+    private static boolean isNotFound(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FileNotFoundException) {
+                return true;
             }
-            for (BitbucketRepository repo : repositories) {
-                if (request.process(repo.getRepositoryName(), sourceFactory, null, witness)) {
-                    listener.getLogger().format(
+        }
+        return false;
+    }
+
+    /**
+     * Processes the repositories on the scan executor of the endpoint, at most twice its pool size ahead of the
+     * reporting. The outcomes are reported in listing order, so the log and the witness count do not depend on which
+     * repository finished first.
+     *
+     * @param request       the request.
+     * @param sourceFactory the source factory.
+     * @param witness       the witness to report the outcomes to.
+     * @param repositories  the names of the repositories to process.
+     * @param missing       the names of the repositories that were not found, or {@code null} if a repository that
+     *                      is not found fails the scan.
+     * @param executors     the executors of the endpoint.
+     * @throws IOException          if processing a repository failed.
+     * @throws InterruptedException if interrupted while waiting on the repositories.
+     */
+    private static void processConcurrently(final BitbucketSCMNavigatorRequest request,
+                                            final SourceFactory sourceFactory,
+                                            WitnessImpl witness,
+                                            List<String> repositories,
+                                            @CheckForNull final Set<String> missing,
+                                            BitbucketEndpointExecutors executors)
+            throws IOException, InterruptedException {
+        ExecutorService executor = executors.getSourceScanExecutor();
+        int window = 2 * executors.getSourceScanConcurrency();
+        final Authentication authentication = Jenkins.getAuthentication();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        Iterator<String> iterator = repositories.iterator();
+        Deque<Future<RecordingWitness>> pending = new ArrayDeque<>();
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < window && iterator.hasNext()) {
+                    final String name = iterator.next();
+                    pending.add(executor.submit(BitbucketRateLimiter.inCurrentLane(new Callable<RecordingWitness>() {
+                        @Override
+                        public RecordingWitness call() throws IOException, InterruptedException {
+                            RecordingWitness recorded = new RecordingWitness();
+                            if (stopped.get()) {
+                                return recorded;
+                            }
+                            SecurityContext context = ACL.impersonate(authentication);
+                            try {
+                                recorded.completed = process(request, name, sourceFactory, recorded, missing);
+                            } finally {
+                                SecurityContextHolder.setContext(context);
+                            }
+                            return recorded;
+                        }
+                    })));
+                }
+                RecordingWitness recorded = getOutcome(pending.removeFirst());
+                recorded.replay(witness);
+                if (recorded.completed) {
+                    witness.listener.getLogger().format(
                             "%d repositories were processed (query completed)%n", witness.getCount()
                     );
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<RecordingWitness> future : pending) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            // let the repositories in flight finish, the ones not started yet are skipped
+            stopped.set(true);
+            for (Future<RecordingWitness> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException | CancellationException e) {
+                    // superseded by the outcome being reported
                 }
             }
-            listener.getLogger().format("%d repositories were processed%n", witness.getCount());
+        }
+    }
+
+    private static RecordingWitness getOutcome(Future<RecordingWitness> future)
+            throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -862,6 +1112,27 @@ public class BitbucketSCMNavigator extends SCMNavigator {
         }
     }
 
+    /**
+     * Records the outcomes of a repository processed concurrently, until they can be reported in order.
+     */
+    private static class RecordingWitness implements SCMNavigatorRequest.Witness {
+        private final List<String> names = new ArrayList<>();
+        private final List<Boolean> matches = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public synchronized void record(@NonNull String name, boolean isMatch) {
+            names.add(name);
+            matches.add(isMatch);
+        }
+
+        synchronized void replay(SCMNavigatorRequest.Witness witness) {
+            for (int i = 0; i < names.size(); i++) {
+                witness.record(names.get(i), matches.get(i));
+            }
+        }
+    }
+
     private class SourceFactory implements SCMNavigatorRequest.SourceLambda {
         private final BitbucketSCMNavigatorRequest request;
 
@@ -23,22 +23,29 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket;
 
+import com.cloudbees.jenkins.plugins.bitbucket.api.AbstractBitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApiFactory;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBranch;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequestEvent;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullRequestValue;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.AbstractBitbucketEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRateLimiter;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequest;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsNameProvider;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
@@ -66,23 +73,41 @@ import hudson.plugins.mercurial.MercurialSCM;
 import hudson.plugins.mercurial.traits.MercurialBrowserSCMSourceTrait;
 import hudson.scm.SCM;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
@@ -134,6 +159,16 @@ public class BitbucketSCMSource extends SCMSource {
     private static final Logger LOGGER = Logger.getLogger(BitbucketSCMSource.class.getName());
     private static final String CLOUD_REPO_TEMPLATE = "{/owner,repo}";
     private static final String SERVER_REPO_TEMPLATE = "/projects{/owner}/repos{/repo}";
+    /**
+     * The number of threads, shared by all sources, resolving pull request hashes and probes ahead of the observer.
+     */
+    private static final int PULL_REQUEST_PREFETCH_THREADS = Math.max(1, Integer.getInteger(
+            BitbucketSCMSource.class.getName() + ".pullRequestPrefetchThreads", 4));
+    /**
+     * The number of pull requests of a scan that may be prefetched ahead of the observer.
+     */
+    private static final int PULL_REQUEST_PREFETCH_WINDOW = 2 * PULL_REQUEST_PREFETCH_THREADS;
+    private static final ExecutorService PULL_REQUEST_PREFETCH = newPullRequestPrefetchExecutor();
 
     /**
      * Bitbucket URL.
@@ -510,7 +545,7 @@ public class BitbucketSCMSource extends SCMSource {
     }
 
     public BitbucketApi buildBitbucketClient(PullRequestSCMHead head) {
-        return BitbucketApiFactory.newInstance(getServerUrl(), credentials(), head.getRepoOwner(), head.getRepository());
+        return BitbucketApiFactory.getInstance(getServerUrl(), credentials(), head.getRepoOwner(), head.getRepository());
     }
 
     @Override
@@ -540,25 +575,39 @@ public class BitbucketSCMSource extends SCMSource {
             }
             // this has the side-effect of ensuring that repository type is always populated.
             listener.getLogger().format("Repository type: %s%n", WordUtils.capitalizeFully(getRepositoryType().name()));
-            // populate the request with its data sources
-            if (request.isFetchPRs()) {
+            // populate the request with its data sources, an event naming its heads only needs those heads
+            if (request.isFetchPRs() && !seedPullRequestsFromEvent(request, event)) {
+                final BitbucketNameQuery targetQuery = NameQueryPushdown.forPullRequestTargets(traits);
                 request.setPullRequests(new LazyIterable<BitbucketPullRequest>() {
                     @Override
                     protected Iterable<BitbucketPullRequest> create() {
                         try {
-                            return (Iterable<BitbucketPullRequest>) buildBitbucketClient().getPullRequests();
+                            if (!targetQuery.isMatchAll()) {
+                                return (Iterable<BitbucketPullRequest>) AbstractBitbucketApi.of(buildBitbucketClient())
+                                        .iteratePullRequests(targetQuery);
+                            }
+                            return (Iterable<BitbucketPullRequest>) AbstractBitbucketApi.of(buildBitbucketClient())
+                                    .iteratePullRequests();
                         } catch (IOException | InterruptedException e) {
                             throw new BitbucketSCMSource.WrappedException(e);
                         }
                     }
                 });
             }
-            if (request.isFetchBranches()) {
+            if (request.isFetchBranches() && !seedBranchesFromEvent(request, event)) {
+                // let Bitbucket drop the branches that the name filters would discard anyway
+                final BitbucketNameQuery branchQuery =
+                        NameQueryPushdown.forBranches(traits, request.getRequestedOriginBranchNames());
                 request.setBranches(new LazyIterable<BitbucketBranch>() {
                     @Override
                     protected Iterable<BitbucketBranch> create() {
                         try {
-                            return (Iterable<BitbucketBranch>) buildBitbucketClient().getBranches();
+                            if (!branchQuery.isMatchAll()) {
+                                return (Iterable<BitbucketBranch>) AbstractBitbucketApi.of(buildBitbucketClient())
+                                        .iterateBranches(branchQuery);
+                            }
+                            return (Iterable<BitbucketBranch>) AbstractBitbucketApi.of(buildBitbucketClient())
+                                    .iterateBranches();
                         } catch (IOException | InterruptedException e) {
                             throw new BitbucketSCMSource.WrappedException(e);
                         }
@@ -569,24 +618,160 @@ public class BitbucketSCMSource extends SCMSource {
                 // TODO request.setTags(...);
             }
 
-            // now server the request
-            if (request.isFetchBranches() && !request.isComplete()) {
-                // Search branches
-                retrieveBranches(request);
-            }
-            if (request.isFetchPRs() && !request.isComplete()) {
-                // Search pull requests
-                retrievePullRequests(request);
-            }
-            if (request.isFetchTags() && !request.isComplete()) {
-                // TODO
+            // the probes only run with criteria, a full scan replays what they learned about the heads that did not move
+            File snapshotFile = criteria == null || observer.getIncludes() != null ? null : getScanSnapshotFile();
+            BitbucketScanSnapshot snapshot =
+                    snapshotFile == null ? null : BitbucketScanSnapshot.load(snapshotFile).nextScan();
+            request.setScanSnapshot(snapshot);
+            boolean complete = false;
+            try {
+                // now server the request
+                if (request.isFetchBranches() && !request.isComplete()) {
+                    if (request.isFetchPRs()) {
+                        // the pull requests look up their branches, keep the listing rather than fetch it twice
+                        request.indexBranches();
+                    }
+                    // Search branches
+                    retrieveBranches(request);
+                }
+                if (request.isFetchPRs() && !request.isComplete()) {
+                    // Search pull requests
+                    retrievePullRequests(request, criteria);
+                }
+                if (request.isFetchTags() && !request.isComplete()) {
+                    // TODO
+                }
+                complete = !request.isComplete();
+            } finally {
+                if (snapshot != null) {
+                    snapshot.finish(complete);
+                    snapshot.save(snapshotFile);
+                    SCMSourceOwner owner = getOwner();
+                    if (owner != null) {
+                        BitbucketScanSnapshot.deleteStale(owner);
+                    }
+                }
             }
         } catch (WrappedException e) {
             e.unwrap();
+        } catch (BitbucketPagedIterable.FetchException e) {
+            e.unwrap();
+        }
+    }
+
+    /**
+     * Populates the pull requests of an event-scoped request by looking up the pull request named by the event,
+     * rather than listing every pull request. The pull request an event carries is not trusted: a late or replayed
+     * event would otherwise move the head back to an older commit, or revive a pull request that was closed since.
+     *
+     * @param request the request.
+     * @param event   the event or {@code null} if the request is not event-scoped.
+     * @return {@code true} if the request was populated, {@code false} if the pull requests have to be listed.
+     */
+    private boolean seedPullRequestsFromEvent(@NonNull BitbucketSCMSourceRequest request,
+                                              @CheckForNull SCMHeadEvent<?> event) {
+        Set<String> requested = request.getRequestedPullRequestNumbers();
+        if (event == null || requested == null || !(event.getPayload() instanceof BitbucketPullRequestEvent)) {
+            // a push event does not name the pull requests of its branches, which the branch filters may need
+            return false;
+        }
+        BitbucketPullRequest pull = ((BitbucketPullRequestEvent) event.getPayload()).getPullRequest();
+        if (pull == null || !requested.equals(Collections.singleton(pull.getId()))) {
+            return false;
+        }
+        final String id = pull.getId();
+        request.setPullRequests(new LazyIterable<BitbucketPullRequest>() {
+            @Override
+            protected Iterable<BitbucketPullRequest> create() {
+                try {
+                    BitbucketPullRequest current = buildBitbucketClient().getPullRequestById(Integer.valueOf(id));
+                    return current == null || !isOpen(current)
+                            ? Collections.<BitbucketPullRequest>emptyList()
+                            : Collections.singletonList(current);
+                } catch (NumberFormatException | FileNotFoundException e) {
+                    return Collections.emptyList();
+                } catch (IOException | InterruptedException e) {
+                    throw new BitbucketSCMSource.WrappedException(e);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Returns whether a pull request looked up by id is still open, the lookup also returns the pull requests that
+     * were merged or declined.
+     *
+     * @param pull the pull request.
+     * @return {@code true} unless the pull request is known to be closed.
+     */
+    private static boolean isOpen(@NonNull BitbucketPullRequest pull) {
+        if (pull instanceof BitbucketServerPullRequest) {
+            return "OPEN".equals(((BitbucketServerPullRequest) pull).getState());
         }
+        if (pull instanceof BitbucketPullRequestValue) {
+            return "OPEN".equals(((BitbucketPullRequestValue) pull).getState());
+        }
+        return true;
     }
 
-    private void retrievePullRequests(final BitbucketSCMSourceRequest request)
+    /**
+     * Populates the branches of an event-scoped request by looking up each requested branch by name, rather than
+     * listing every branch. The hash an event carries is not trusted: a late or replayed event would otherwise move
+     * the head back to an older commit.
+     *
+     * @param request the request.
+     * @param event   the event or {@code null} if the request is not event-scoped.
+     * @return {@code true} if the request was populated, {@code false} if the branches have to be listed.
+     */
+    private boolean seedBranchesFromEvent(@NonNull BitbucketSCMSourceRequest request,
+                                          @CheckForNull SCMHeadEvent<?> event) {
+        final Set<String> requested = request.getRequestedOriginBranchNames();
+        if (event == null || requested == null) {
+            return false;
+        }
+        final Set<String> removed = new HashSet<>();
+        for (Map.Entry<SCMHead, SCMRevision> entry : event.heads(this).entrySet()) {
+            if (entry.getKey() instanceof BranchSCMHead && entry.getValue() == null) {
+                removed.add(entry.getKey().getName());
+            }
+        }
+        request.setBranches(new LazyIterable<BitbucketBranch>() {
+            @Override
+            protected Iterable<BitbucketBranch> create() {
+                try {
+                    List<BitbucketBranch> branches = new ArrayList<>(requested.size());
+                    AbstractBitbucketApi bitbucket = null;
+                    for (String name : requested) {
+                        if (removed.contains(name)) {
+                            continue;
+                        }
+                        if (bitbucket == null) {
+                            bitbucket = AbstractBitbucketApi.of(buildBitbucketClient());
+                        }
+                        BitbucketBranch branch = bitbucket.getBranch(name);
+                        if (branch != null) {
+                            branches.add(branch);
+                        }
+                    }
+                    return branches;
+                } catch (IOException | InterruptedException e) {
+                    throw new BitbucketSCMSource.WrappedException(e);
+                }
+            }
+        });
+        return true;
+    }
+
+    @CheckForNull
+    private File getScanSnapshotFile() {
+        SCMSourceOwner owner = getOwner();
+        File rootDir = owner == null ? null : owner.getRootDir();
+        return rootDir == null ? null : BitbucketScanSnapshot.fileOf(rootDir, getId());
+    }
+
+    private void retrievePullRequests(final BitbucketSCMSourceRequest request,
+                                      @CheckForNull SCMSourceCriteria criteria)
             throws IOException, InterruptedException {
         final String fullName = repoOwner + "/" + repository;
 
@@ -599,111 +784,110 @@ public class BitbucketSCMSource extends SCMSource {
             return;
         }
 
+        final Set<String> requestedPRs = request.getRequestedPullRequestNumbers();
+        if (requestedPRs != null && requestedPRs.isEmpty()) {
+            // the request is scoped to other heads, only the branch filters may need the pull requests
+            return;
+        }
         request.listener().getLogger().printf("Looking up %s for pull requests%n", fullName);
         final Set<String> livePRs = new HashSet<>();
         int count = 0;
         Map<Boolean, Set<ChangeRequestCheckoutStrategy>> strategies = request.getPRStrategies();
-        for (final BitbucketPullRequest pull : request.getPullRequests()) {
-            request.listener().getLogger().printf(
-                    "Checking PR-%s from %s and branch %s%n",
-                    pull.getId(),
-                    pull.getSource().getRepository().getFullName(),
-                    pull.getSource().getBranch().getName()
-            );
-            boolean fork = !fullName.equalsIgnoreCase(pull.getSource().getRepository().getFullName());
-            String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
-            String pullRepository = pull.getSource().getRepository().getRepositoryName();
-            final BitbucketApi pullBitbucket = fork && originBitbucket instanceof BitbucketCloudApiClient
-                    ? BitbucketApiFactory.newInstance(
-                    getServerUrl(),
-                    credentials(),
-                    pullRepoOwner,
-                    pullRepository
-            )
-                    : originBitbucket;
-            count++;
-            livePRs.add(pull.getId());
-            getPullRequestTitleCache()
-                    .put(pull.getId(), StringUtils.defaultString(pull.getTitle()));
-            getPullRequestContributorCache().put(pull.getId(),
-                    // TODO get more details on the author
-                    new ContributorMetadataAction(pull.getAuthorLogin(), null, null)
-            );
-            try {
-                // We store resolved hashes here so to avoid resolving the commits multiple times
-                for (final ChangeRequestCheckoutStrategy strategy : strategies.get(fork)) {
-                    final String branchName;
-                    if (strategies.get(fork).size() == 1) {
-                        branchName = "PR-" + pull.getId();
-                    } else {
-                        branchName = "PR-" + pull.getId() + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
-                    }
-                    PullRequestSCMHead head;
-                    if (originBitbucket instanceof BitbucketCloudApiClient) {
-                        head = new PullRequestSCMHead(branchName,
-                                pullRepoOwner,
-                                pullRepository,
-                                repositoryType,
-                                pull.getSource().getBranch().getName(),
-                                pull,
-                                originOf(pullRepoOwner, pullRepository),
-                                strategy
-                        );
-                    } else {
-                        head = new PullRequestSCMHead(branchName,
-                                repoOwner,
-                                repository,
-                                repositoryType,
-                                branchName,
-                                pull,
-                                originOf(pullRepoOwner, pullRepository),
-                                strategy
-                        );
+        // when the name filters narrowed the branch listing it may lack the targets, those are then looked up once each
+        final Map<String, BitbucketBranch> lookedUpTargets = request.isFetchBranches()
+                && !NameQueryPushdown.forBranches(traits, request.getRequestedOriginBranchNames()).isMatchAll()
+                ? new HashMap<String, BitbucketBranch>()
+                : null;
+        // the network work of the next few pull requests (hash resolution and probes) runs ahead concurrently while
+        // the observer still sees the pull requests one at a time and in listing order
+        // the prefetches look up the source branches, walk the branch listing here rather than on one of their threads
+        request.indexBranches();
+        Iterator<BitbucketPullRequest> pulls = request.getPullRequests().iterator();
+        Deque<PullRequestPrefetch> prefetched = new ArrayDeque<>();
+        try {
+            while (true) {
+                while (prefetched.size() < PULL_REQUEST_PREFETCH_WINDOW && pulls.hasNext()) {
+                    BitbucketPullRequest next = pulls.next();
+                    if (requestedPRs != null && !requestedPRs.contains(next.getId())) {
+                        continue;
                     }
-                    if (request.process(
-                            head,
-                            new SCMSourceRequest.IntermediateLambda<String>() {
-                                @Nullable
-                                @Override
-                                public String create() throws IOException, InterruptedException {
-                                    try {
-                                        return originBitbucket.resolveSourceFullHash(pull);
-                                    } catch (BitbucketRequestException e) {
-                                        if (originBitbucket instanceof BitbucketCloudApiClient) {
+                    prefetched.add(new PullRequestPrefetch(request, criteria, originBitbucket, next, strategies));
+                }
+                final PullRequestPrefetch prefetch = prefetched.poll();
+                if (prefetch == null) {
+                    break;
+                }
+                final BitbucketPullRequest pull = prefetch.pull;
+                request.listener().getLogger().printf(
+                        "Checking PR-%s from %s and branch %s%n",
+                        pull.getId(),
+                        pull.getSource().getRepository().getFullName(),
+                        pull.getSource().getBranch().getName()
+                );
+                prefetch.replayLog(request.listener());
+                boolean fork = prefetch.fork;
+                final BitbucketApi pullBitbucket = prefetch.pullBitbucket;
+                count++;
+                livePRs.add(pull.getId());
+                getPullRequestTitleCache()
+                        .put(pull.getId(), StringUtils.defaultString(pull.getTitle()));
+                getPullRequestContributorCache().put(pull.getId(),
+                        // TODO get more details on the author
+                        new ContributorMetadataAction(pull.getAuthorLogin(), null, null)
+                );
+                try {
+                    // We store resolved hashes here so to avoid resolving the commits multiple times
+                    for (final ChangeRequestCheckoutStrategy strategy : strategies.get(fork)) {
+                        PullRequestSCMHead head = newPullRequestHead(originBitbucket, pull, strategy,
+                                strategies.get(fork).size());
+                        if (request.process(
+                                head,
+                                new SCMSourceRequest.IntermediateLambda<String>() {
+                                    @Nullable
+                                    @Override
+                                    public String create() throws IOException, InterruptedException {
+                                        try {
+                                            return prefetch.getHash();
+                                        } catch (BitbucketRequestException e) {
+                                            if (originBitbucket instanceof BitbucketCloudApiClient) {
+                                                if (e.getHttpCode() == 403) {
+                                                    request.listener().getLogger().printf("Skipping %s because of %s%n",
+                                                            pull.getId(), HyperlinkNote.encodeTo(
+                                                                    "https://bitbucket.org/site/master"
+                                                                            + "/issues/5814/reify-pull-requests"
+                                                                            + "-by-making-them-a-ref",
+                                                                    "a permission issue accessing pull requests "
+                                                                            + "from forks"));
+                                                    throw new Skip();
+                                                }
+                                            }
+                                            // https://bitbucket
+                                            // .org/site/master/issues/5814/reify-pull-requests-by-making-them-a-ref
+                                            e.printStackTrace(request.listener().getLogger());
                                             if (e.getHttpCode() == 403) {
-                                                request.listener().getLogger().printf("Skipping %s because of %s%n",
-                                                        pull.getId(), HyperlinkNote.encodeTo(
-                                                                "https://bitbucket.org/site/master"
-                                                                        + "/issues/5814/reify-pull-requests"
-                                                                        + "-by-making-them-a-ref",
-                                                                "a permission issue accessing pull requests "
-                                                                        + "from forks"));
+                                                // the credentials do not have permission, so we should not observe the
+                                                // PR ever the PR is dead to us, so this is the one case where we can
+                                                // squash the exception.
                                                 throw new Skip();
                                             }
+                                            throw e;
                                         }
-                                        // https://bitbucket
-                                        // .org/site/master/issues/5814/reify-pull-requests-by-making-them-a-ref
-                                        e.printStackTrace(request.listener().getLogger());
-                                        if (e.getHttpCode() == 403) {
-                                            // the credentials do not have permission, so we should not observe the
-                                            // PR ever the PR is dead to us, so this is the one case where we can
-                                            // squash the exception.
-                                            throw new Skip();
-                                        }
-                                        throw e;
                                     }
-                                }
-                            },
-                            new BitbucketProbeFactory(pullBitbucket, request),
-                            new BitbucketRevisionFactory() {
-                                @NonNull
-                                @Override
-                                public SCMRevision create(@NonNull SCMHead head, @Nullable String hash)
-                                        throws IOException, InterruptedException {
-                                    if (head instanceof PullRequestSCMHead) {
-                                        PullRequestSCMHead h = (PullRequestSCMHead) head;
-                                        for (BitbucketBranch b : request.getBranches()) {
-                                            if (b.getName().equals(h.getTarget().getName())) {
+                                },
+                                new BitbucketProbeFactory(pullBitbucket, request),
+                                new BitbucketRevisionFactory() {
+                                    @NonNull
+                                    @Override
+                                    public SCMRevision create(@NonNull SCMHead head, @Nullable String hash)
+                                            throws IOException, InterruptedException {
+                                        if (head instanceof PullRequestSCMHead) {
+                                            PullRequestSCMHead h = (PullRequestSCMHead) head;
+                                            BitbucketBranch b = request.getBranch(h.getTarget().getName());
+                                            if (b == null && lookedUpTargets != null) {
+                                                b = lookUpBranch(lookedUpTargets, originBitbucket,
+                                                        h.getTarget().getName());
+                                            }
+                                            if (b != null) {
                                                 if (repositoryType == BitbucketRepositoryType.MERCURIAL) {
                                                     return new PullRequestSCMRevision<>(
                                                             h,
@@ -724,27 +908,40 @@ public class BitbucketSCMSource extends SCMSource {
                                                 }
                                             }
                                         }
+                                        return super.create(head, hash);
                                     }
-                                    return super.create(head, hash);
-                                }
-                            }, new CriteriaWitness(request))) {
-                        request.listener().getLogger()
-                                .format("%n  %d pull requests were processed (query completed)%n", count);
-                        return;
+                                }, new CriteriaWitness(request))) {
+                            request.listener().getLogger()
+                                    .format("%n  %d pull requests were processed (query completed)%n", count);
+                            return;
+                        }
                     }
+                } catch (Skip e) {
+                    request.listener().getLogger().println(
+                            "Do not have permission to view PR from " + pull.getSource().getRepository()
+                                    .getFullName()
+                                    + " and branch "
+                                    + pull.getSource().getBranch().getName());
+                    continue;
                 }
-            } catch (Skip e) {
-                request.listener().getLogger().println(
-                        "Do not have permission to view PR from " + pull.getSource().getRepository()
-                                .getFullName()
-                                + " and branch "
-                                + pull.getSource().getBranch().getName());
-                continue;
+            }
+        } finally {
+            for (PullRequestPrefetch p : prefetched) {
+                p.cancel();
             }
         }
         request.listener().getLogger().format("%n  %d pull requests were processed%n", count);
-        getPullRequestTitleCache().keySet().retainAll(livePRs);
-        getPullRequestContributorCache().keySet().retainAll(livePRs);
+        if (requestedPRs == null) {
+            getPullRequestTitleCache().keySet().retainAll(livePRs);
+            getPullRequestContributorCache().keySet().retainAll(livePRs);
+        } else {
+            for (String id : requestedPRs) {
+                if (!livePRs.contains(id)) {
+                    getPullRequestTitleCache().remove(id);
+                    getPullRequestContributorCache().remove(id);
+                }
+            }
+        }
     }
 
     private void retrieveBranches(final BitbucketSCMSourceRequest request)
@@ -781,10 +978,9 @@ public class BitbucketSCMSource extends SCMSource {
     @Override
     protected SCMRevision retrieve(SCMHead head, TaskListener listener) throws IOException, InterruptedException {
         final BitbucketApi bitbucket = buildBitbucketClient();
-        List<? extends BitbucketBranch> branches = bitbucket.getBranches();
         if (head instanceof PullRequestSCMHead) {
             PullRequestSCMHead h = (PullRequestSCMHead) head;
-            String targetRevision = findRawNode(h.getTarget().getName(), branches, listener);
+            String targetRevision = findRawNode(h.getTarget().getName(), bitbucket, listener);
             if (targetRevision == null) {
                 LOGGER.log(Level.WARNING, "No branch found in {0}/{1} with name [{2}]",
                         new Object[]{repoOwner, repository, h.getTarget().getName()});
@@ -792,13 +988,11 @@ public class BitbucketSCMSource extends SCMSource {
             }
             String sourceRevision;
             if (bitbucket instanceof BitbucketCloudApiClient) {
-                branches = head.getOrigin() == SCMHeadOrigin.DEFAULT
-                        ? branches
-                        : buildBitbucketClient(h).getBranches();
-                sourceRevision = findRawNode(h.getBranchName(), branches, listener);
+                sourceRevision = findRawNode(h.getBranchName(),
+                        head.getOrigin() == SCMHeadOrigin.DEFAULT ? bitbucket : buildBitbucketClient(h),
+                        listener);
             } else {
-                final List<? extends BitbucketPullRequest> pullRequests = bitbucket.getPullRequests();
-                sourceRevision = findPRRawNode(h.getId(), pullRequests, listener);
+                sourceRevision = findPRRawNode(h.getId(), bitbucket, listener);
             }
             if (sourceRevision == null) {
                 LOGGER.log(Level.WARNING, "No revision found in {0}/{1} for PR-{2} [{3}]",
@@ -824,7 +1018,7 @@ public class BitbucketSCMSource extends SCMSource {
                 );
             }
         } else {
-            String revision = findRawNode(head.getName(), branches, listener);
+            String revision = findRawNode(head.getName(), bitbucket, listener);
             if (revision == null) {
                 LOGGER.log(Level.WARNING, "No branch found in {0}/{1} with name [{2}]",
                         new Object[]{repoOwner, repository, head.getName()});
@@ -838,45 +1032,54 @@ public class BitbucketSCMSource extends SCMSource {
         }
     }
 
-    private String findRawNode(String branchName, List<? extends BitbucketBranch> branches, TaskListener listener) {
-        for (BitbucketBranch b : branches) {
-            if (branchName.equals(b.getName())) {
-                String revision = b.getRawNode();
-                if (revision == null) {
-                    if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in branch %s%n",
-                                branchName);
-                    } else {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in branch %s. "
-                                        + "Perhaps you are using Bitbucket Server previous to 4.x%n",
-                                branchName);
-                    }
-                    return null;
+    private String findRawNode(String branchName, BitbucketApi bitbucket, TaskListener listener)
+            throws IOException, InterruptedException {
+        BitbucketBranch b = AbstractBitbucketApi.of(bitbucket).getBranch(branchName);
+        if (b != null) {
+            String revision = b.getRawNode();
+            if (revision == null) {
+                if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
+                    listener.getLogger().format("Cannot resolve the hash of the revision in branch %s%n",
+                            branchName);
+                } else {
+                    listener.getLogger().format("Cannot resolve the hash of the revision in branch %s. "
+                                    + "Perhaps you are using Bitbucket Server previous to 4.x%n",
+                            branchName);
                 }
-                return revision;
+                return null;
             }
+            return revision;
         }
         listener.getLogger().format("Cannot find the branch %s%n", branchName);
         return null;
     }
 
-    private String findPRRawNode(String prId, List<? extends BitbucketPullRequest> pullRequests, TaskListener listener) {
-        for (BitbucketPullRequest pr : pullRequests) {
-            if (prId.equals(pr.getId())) {
-                String revision = pr.getSource().getCommit().getHash();
-                if (revision == null) {
-                    if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s%n",
-                                prId);
-                    } else {
-                        listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s. "
-                                        + "Perhaps you are using Bitbucket Server previous to 4.x%n",
-                                prId);
-                    }
-                    return null;
+    private String findPRRawNode(String prId, BitbucketApi bitbucket, TaskListener listener)
+            throws IOException, InterruptedException {
+        BitbucketPullRequest pr;
+        try {
+            pr = bitbucket.getPullRequestById(Integer.valueOf(prId));
+        } catch (NumberFormatException | FileNotFoundException e) {
+            pr = null;
+        }
+        if (pr != null && !isOpen(pr)) {
+            listener.getLogger().format("PR-%s is no longer open%n", prId);
+            return null;
+        }
+        if (pr != null) {
+            String revision = pr.getSource().getCommit().getHash();
+            if (revision == null) {
+                if (BitbucketCloudEndpoint.SERVER_URL.equals(getServerUrl())) {
+                    listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s%n",
+                            prId);
+                } else {
+                    listener.getLogger().format("Cannot resolve the hash of the revision in PR-%s. "
+                                    + "Perhaps you are using Bitbucket Server previous to 4.x%n",
+                            prId);
                 }
-                return revision;
+                return null;
             }
+            return revision;
         }
         listener.getLogger().format("Cannot find the PR-%s%n", prId);
         return null;
@@ -1381,19 +1584,235 @@ public class BitbucketSCMSource extends SCMSource {
         }
     }
 
+    private static ExecutorService newPullRequestPrefetchExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PULL_REQUEST_PREFETCH_THREADS,
+                PULL_REQUEST_PREFETCH_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Bitbucket pull request prefetch"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Looks up a branch by name, remembering the outcome in the supplied map.
+     *
+     * @param branches  the branches looked up so far.
+     * @param bitbucket the API client.
+     * @param name      the branch name.
+     * @return the branch or {@code null} if there is no such branch.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    private static BitbucketBranch lookUpBranch(Map<String, BitbucketBranch> branches, BitbucketApi bitbucket,
+                                                String name) throws IOException, InterruptedException {
+        synchronized (branches) {
+            if (branches.containsKey(name)) {
+                return branches.get(name);
+            }
+        }
+        BitbucketBranch branch = AbstractBitbucketApi.of(bitbucket).getBranch(name);
+        synchronized (branches) {
+            branches.put(name, branch);
+        }
+        return branch;
+    }
+
+    private PullRequestSCMHead newPullRequestHead(BitbucketApi originBitbucket, BitbucketPullRequest pull,
+                                                  ChangeRequestCheckoutStrategy strategy, int strategyCount) {
+        String pullRepoOwner = pull.getSource().getRepository().getOwnerName();
+        String pullRepository = pull.getSource().getRepository().getRepositoryName();
+        final String branchName;
+        if (strategyCount == 1) {
+            branchName = "PR-" + pull.getId();
+        } else {
+            branchName = "PR-" + pull.getId() + "-" + strategy.name().toLowerCase(Locale.ENGLISH);
+        }
+        if (originBitbucket instanceof BitbucketCloudApiClient) {
+            return new PullRequestSCMHead(branchName,
+                    pullRepoOwner,
+                    pullRepository,
+                    repositoryType,
+                    pull.getSource().getBranch().getName(),
+                    pull,
+                    originOf(pullRepoOwner, pullRepository),
+                    strategy
+            );
+        } else {
+            return new PullRequestSCMHead(branchName,
+                    repoOwner,
+                    repository,
+                    repositoryType,
+                    branchName,
+                    pull,
+                    originOf(pullRepoOwner, pullRepository),
+                    strategy
+            );
+        }
+    }
+
+    /**
+     * The network work needed to process a pull request, started ahead of the observer reaching it: resolving its
+     * source hash and running the criteria probes, whose results land in the commit and path caches of the endpoint.
+     * The probes log to a buffer, so that the output of concurrent prefetches does not interleave in the scan log.
+     */
+    private class PullRequestPrefetch {
+        private final BitbucketSCMSourceRequest request;
+        private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        private volatile boolean failed;
+        private final BitbucketApi originBitbucket;
+        private final BitbucketPullRequest pull;
+        private final boolean fork;
+        private final BitbucketApi pullBitbucket;
+        @CheckForNull
+        private final Future<String> hash;
+
+        PullRequestPrefetch(final BitbucketSCMSourceRequest request, @CheckForNull final SCMSourceCriteria criteria,
+                            final BitbucketApi originBitbucket, final BitbucketPullRequest pull,
+                            Map<Boolean, Set<ChangeRequestCheckoutStrategy>> strategies) {
+            this.request = request;
+            this.originBitbucket = originBitbucket;
+            this.pull = pull;
+            this.fork = !(repoOwner + "/" + repository)
+                    .equalsIgnoreCase(pull.getSource().getRepository().getFullName());
+            this.pullBitbucket = fork && originBitbucket instanceof BitbucketCloudApiClient
+                    ? BitbucketApiFactory.getInstance(
+                    getServerUrl(),
+                    credentials(),
+                    pull.getSource().getRepository().getOwnerName(),
+                    pull.getSource().getRepository().getRepositoryName()
+            )
+                    : originBitbucket;
+            PullRequestSCMHead probeHead = null;
+            Set<ChangeRequestCheckoutStrategy> forkStrategies = strategies.get(fork);
+            for (ChangeRequestCheckoutStrategy strategy : forkStrategies) {
+                PullRequestSCMHead head = newPullRequestHead(originBitbucket, pull, strategy, forkStrategies.size());
+                if (!request.isExcluded(head)) {
+                    probeHead = head;
+                    break;
+                }
+            }
+            if (probeHead == null) {
+                // none of the heads will be processed, so there is nothing to prefetch
+                this.hash = null;
+                return;
+            }
+            final SCMHead head = probeHead;
+            this.hash = PULL_REQUEST_PREFETCH.submit(BitbucketRateLimiter.inCurrentLane(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    String sourceHash = resolveHash();
+                    if (criteria != null) {
+                        TaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+                        try {
+                            criteria.isHead(new BitbucketProbeFactory(pullBitbucket, request, listener)
+                                    .create(head, sourceHash), listener);
+                        } catch (IOException | RuntimeException e) {
+                            failed = true;
+                            listener.getLogger().format("Could not prefetch the probes of PR-%s: %s%n",
+                                    pull.getId(), e);
+                        }
+                    }
+                    return sourceHash;
+                }
+            }));
+        }
+
+        /**
+         * Waits for the prefetch and copies what its probes logged to the supplied listener if they failed. The
+         * probes of a successful prefetch are repeated, and report the same, when the pull request is processed.
+         *
+         * @param listener the listener of the scan.
+         * @throws InterruptedException if interrupted while waiting for the prefetch.
+         */
+        void replayLog(TaskListener listener) throws InterruptedException {
+            if (hash == null) {
+                return;
+            }
+            try {
+                hash.get();
+            } catch (ExecutionException | CancellationException e) {
+                // reported by getHash()
+            }
+            if (failed) {
+                listener.getLogger().print(new String(log.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Returns the source hash of the pull request, waiting for it to be resolved if needed.
+         */
+        String getHash() throws IOException, InterruptedException {
+            if (hash == null) {
+                return resolveHash();
+            }
+            try {
+                return hash.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        /**
+         * Resolves the full source hash. The listings of some endpoints only report an abbreviated hash, the branch
+         * listing already has the full hash when the source branch of an origin pull request is still at that commit.
+         */
+        private String resolveHash() throws IOException, InterruptedException {
+            BitbucketCommit reported = pull.getSource().getCommit();
+            String shortHash = reported == null ? null : reported.getHash();
+            if (!fork && shortHash != null) {
+                BitbucketBranch branch = request.getBranch(pull.getSource().getBranch().getName());
+                String rawNode = branch == null ? null : branch.getRawNode();
+                if (rawNode != null && rawNode.length() > shortHash.length() && rawNode.startsWith(shortHash)) {
+                    return rawNode;
+                }
+            }
+            return originBitbucket.resolveSourceFullHash(pull);
+        }
+
+        void cancel() {
+            if (hash != null) {
+                hash.cancel(true);
+            }
+        }
+    }
+
     private static class BitbucketProbeFactory implements SCMSourceRequest.ProbeLambda<SCMHead, String> {
         private final BitbucketApi bitbucket;
         private final BitbucketSCMSourceRequest request;
+        private final TaskListener listener;
 
         public BitbucketProbeFactory(BitbucketApi bitbucket, BitbucketSCMSourceRequest request) {
+            this(bitbucket, request, request.listener());
+        }
+
+        BitbucketProbeFactory(BitbucketApi bitbucket, BitbucketSCMSourceRequest request, TaskListener listener) {
             this.bitbucket = bitbucket;
             this.request = request;
+            this.listener = listener;
         }
 
         @NonNull
         @Override
         public SCMSourceCriteria.Probe create(@NonNull final SCMHead head, @Nullable final String hash)
                 throws IOException, InterruptedException {
+            BitbucketScanSnapshot snapshot = request.getScanSnapshot();
+            // the answers only depend on the hash, an unchanged head replays those of the previous scan
+            final BitbucketScanSnapshot.Head recorded = snapshot == null || hash == null
+                    ? null
+                    : snapshot.head(head, hash);
             return new SCMSourceCriteria.Probe() {
                 @Override
                 public String name() {
@@ -1402,17 +1821,23 @@ public class BitbucketSCMSource extends SCMSource {
 
                 @Override
                 public long lastModified() {
+                    if (recorded != null && recorded.getLastModified() != null) {
+                        return recorded.getLastModified();
+                    }
                     try {
                         BitbucketCommit commit = bitbucket.resolveCommit(hash);
                         if (commit == null) {
-                            request.listener().getLogger()
+                            listener.getLogger()
                                     .format("Can not resolve commit by hash [%s] on repository %s/%s%n",
                                             hash, bitbucket.getOwner(), bitbucket.getRepositoryName());
                             return 0;
                         }
+                        if (recorded != null) {
+                            recorded.setLastModified(commit.getDateMillis());
+                        }
                         return commit.getDateMillis();
                     } catch (InterruptedException | IOException e) {
-                        request.listener().getLogger()
+                        listener.getLogger()
                                 .format("Can not resolve commit by hash [%s] on repository %s/%s%n",
                                         hash, bitbucket.getOwner(), bitbucket.getRepositoryName());
                         return 0;
@@ -1421,8 +1846,16 @@ public class BitbucketSCMSource extends SCMSource {
 
                 @Override
                 public boolean exists(@NonNull String path) throws IOException {
+                    Boolean exists = recorded == null ? null : recorded.getExists(path);
+                    if (exists != null) {
+                        return exists;
+                    }
                     try {
-                        return bitbucket.checkPathExists(hash, path);
+                        exists = bitbucket.checkPathExists(hash, path);
+                        if (recorded != null) {
+                            recorded.setExists(path, exists);
+                        }
+                        return exists;
                     } catch (InterruptedException e) {
                         throw new IOException("Interrupted", e);
                     }
@@ -31,10 +31,14 @@ import hudson.Util;
 import hudson.model.TaskListener;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import jenkins.scm.api.SCMHead;
@@ -42,6 +46,8 @@ import jenkins.scm.api.SCMHeadOrigin;
 import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
 import jenkins.scm.api.mixin.TagSCMHead;
 import jenkins.scm.api.trait.SCMSourceRequest;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * The {@link SCMSourceRequest} for bitbucket.
@@ -115,6 +121,28 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
     @CheckForNull
     private Iterable<BitbucketBranch> branches;
     // TODO private Iterable<BitbucketTag> tags;
+    /**
+     * The {@link #branches} keyed by name, in listing order, built on first use. Once built it also serves
+     * {@link #getBranches()}, so that the listing is only fetched once.
+     */
+    @CheckForNull
+    private Map<String, BitbucketBranch> branchesByName;
+    /**
+     * The {@link #pullRequests} kept while building {@link #pullRequestsBySource}. Once built it serves
+     * {@link #getPullRequests()}, so that the listing is only fetched once.
+     */
+    @CheckForNull
+    private List<BitbucketPullRequest> pullRequestList;
+    /**
+     * The {@link #pullRequests} keyed by {@link #sourceKey(String, String)}, built on first use.
+     */
+    @CheckForNull
+    private Map<String, List<BitbucketPullRequest>> pullRequestsBySource;
+    /**
+     * The record of what the probes of this request learn, seeded from the previous scan.
+     */
+    @CheckForNull
+    private BitbucketScanSnapshot scanSnapshot;
 
     /**
      * Constructor.
@@ -303,6 +331,29 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
         return requestedTagNames;
     }
 
+    /**
+     * Provides the record of what the probes of this request learn.
+     *
+     * @param scanSnapshot the record, seeded from the previous scan, or {@code null} to always ask Bitbucket.
+     * @since 2.2.11
+     */
+    @Restricted(NoExternalUse.class)
+    public final void setScanSnapshot(@CheckForNull BitbucketScanSnapshot scanSnapshot) {
+        this.scanSnapshot = scanSnapshot;
+    }
+
+    /**
+     * Returns the record of what the probes of this request learn.
+     *
+     * @return the record or {@code null} if the probes always ask Bitbucket.
+     * @since 2.2.11
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    public final BitbucketScanSnapshot getScanSnapshot() {
+        return scanSnapshot;
+    }
+
     /**
      * Returns the {@link BitbucketSCMSource#getRepoOwner()}
      *
@@ -329,7 +380,11 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
      * @param pullRequests the pull request details.
      */
     public final void setPullRequests(@CheckForNull Iterable<BitbucketPullRequest> pullRequests) {
-        this.pullRequests = pullRequests;
+        synchronized (this) {
+            this.pullRequestsBySource = null;
+            this.pullRequestList = null;
+            this.pullRequests = pullRequests;
+        }
     }
 
     /**
@@ -340,7 +395,12 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
      */
     @NonNull
     public final Iterable<BitbucketPullRequest> getPullRequests() {
-        return Util.fixNull(pullRequests);
+        synchronized (this) {
+            if (pullRequestList != null) {
+                return Collections.unmodifiableList(pullRequestList);
+            }
+            return Util.fixNull(pullRequests);
+        }
     }
 
     /**
@@ -349,7 +409,10 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
      * @param branches the branch details.
      */
     public final void setBranches(@CheckForNull Iterable<BitbucketBranch> branches) {
-        this.branches = branches;
+        synchronized (this) {
+            this.branchesByName = null;
+            this.branches = branches;
+        }
     }
 
     /**
@@ -360,11 +423,98 @@ public class BitbucketSCMSourceRequest extends SCMSourceRequest {
      */
     @NonNull
     public final Iterable<BitbucketBranch> getBranches() {
-        return Util.fixNull(branches);
+        synchronized (this) {
+            if (branchesByName != null) {
+                return Collections.unmodifiableCollection(branchesByName.values());
+            }
+            return Util.fixNull(branches);
+        }
     }
 
     // TODO Iterable<BitbucketTag> getTags() and setTags(...)
 
+    /**
+     * Returns the branch with the specified name. The branches are indexed on first use, so that repeated lookups do
+     * not walk {@link #getBranches()}.
+     *
+     * @param name the branch name.
+     * @return the branch or {@code null} if there is no such branch in {@link #getBranches()}.
+     * @since 2.2.11
+     */
+    @CheckForNull
+    public final BitbucketBranch getBranch(@NonNull String name) {
+        indexBranches();
+        synchronized (this) {
+            return branchesByName.get(name);
+        }
+    }
+
+    /**
+     * Walks {@link #getBranches()} once and keeps the branches, so that later walks and lookups do not fetch the
+     * listing again.
+     */
+    synchronized void indexBranches() {
+        if (branchesByName != null) {
+            return;
+        }
+        Map<String, BitbucketBranch> index = new LinkedHashMap<>();
+        for (BitbucketBranch branch : Util.fixNull(branches)) {
+            if (!index.containsKey(branch.getName())) {
+                index.put(branch.getName(), branch);
+            }
+        }
+        branchesByName = index;
+    }
+
+    /**
+     * Returns the pull requests filed from the specified branch of the specified repository. The pull requests are
+     * indexed on first use, so that repeated lookups do not walk {@link #getPullRequests()}.
+     *
+     * @param repositoryFullName the full name ({@code owner/repository}) of the source repository, case insensitive.
+     * @param branchName         the source branch name.
+     * @return the pull requests, in the order of {@link #getPullRequests()} (may be empty).
+     * @since 2.2.11
+     */
+    @NonNull
+    public final List<BitbucketPullRequest> getPullRequestsBySource(@NonNull String repositoryFullName,
+                                                                    @NonNull String branchName) {
+        indexPullRequests();
+        synchronized (this) {
+            return readOnly(pullRequestsBySource.get(sourceKey(repositoryFullName, branchName)));
+        }
+    }
+
+    private synchronized void indexPullRequests() {
+        if (pullRequestsBySource != null) {
+            return;
+        }
+        Map<String, List<BitbucketPullRequest>> bySource = new HashMap<>();
+        List<BitbucketPullRequest> all = new ArrayList<>();
+        for (BitbucketPullRequest pullRequest : Util.fixNull(pullRequests)) {
+            all.add(pullRequest);
+            String key = sourceKey(pullRequest.getSource().getRepository().getFullName(),
+                    pullRequest.getSource().getBranch().getName());
+            List<BitbucketPullRequest> list = bySource.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                bySource.put(key, list);
+            }
+            list.add(pullRequest);
+        }
+        pullRequestsBySource = bySource;
+        pullRequestList = all;
+    }
+
+    private static List<BitbucketPullRequest> readOnly(@CheckForNull List<BitbucketPullRequest> list) {
+        return list == null
+                ? Collections.<BitbucketPullRequest>emptyList()
+                : Collections.unmodifiableList(list);
+    }
+
+    private static String sourceKey(String repositoryFullName, String branchName) {
+        return repositoryFullName.toLowerCase(Locale.ENGLISH) + ':' + branchName;
+    }
+
     /**
      * {@inheritDoc}
      */
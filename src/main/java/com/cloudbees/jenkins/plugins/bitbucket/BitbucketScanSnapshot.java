@@ -0,0 +1,311 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Items;
+import hudson.model.listeners.ItemListener;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * What the criteria probes of a scan learned about each head: the hash the head pointed to, the commit timestamp and
+ * the paths that were checked for existence. All of it only depends on the hash, so a later scan finding a head at the
+ * same hash replays the recorded answers instead of asking Bitbucket again and the cost of a scan follows the number
+ * of heads that changed rather than the size of the repository.
+ * <p>
+ * The snapshot of the last full scan is persisted next to the owner of the source so that it survives restarts, where
+ * the endpoint caches do not. It is only read and written by full scans, event scans rely on the endpoint caches.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketScanSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketScanSnapshot.class.getName());
+
+    /**
+     * The prefix of the names of the snapshot files.
+     */
+    private static final String FILE_PREFIX = "bitbucket-scan-";
+
+    /**
+     * The suffix of the names of the snapshot files.
+     */
+    private static final String FILE_SUFFIX = ".xml";
+
+    /**
+     * The heads, keyed by head type and name.
+     */
+    private ConcurrentMap<String, Head> heads = new ConcurrentHashMap<>();
+
+    /**
+     * The snapshot of the previous scan while this scan is in progress.
+     */
+    @CheckForNull
+    private transient BitbucketScanSnapshot previous;
+
+    /**
+     * Returns the file the snapshot of a source is persisted to.
+     *
+     * @param rootDir  the root directory of the owner of the source.
+     * @param sourceId the {@link SCMSource#getId()}.
+     * @return the file.
+     */
+    @NonNull
+    public static File fileOf(@NonNull File rootDir, @NonNull String sourceId) {
+        return new File(rootDir, FILE_PREFIX + Util.getDigestOf(sourceId) + FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the snapshots of the sources an owner no longer has, left behind when a source was removed or its id
+     * changed.
+     *
+     * @param owner the owner.
+     */
+    public static void deleteStale(@NonNull SCMSourceOwner owner) {
+        File rootDir = owner.getRootDir();
+        if (rootDir == null) {
+            return;
+        }
+        final Set<String> current = new HashSet<>();
+        for (SCMSource source : owner.getSCMSources()) {
+            current.add(fileOf(rootDir, source.getId()).getName());
+        }
+        File[] stale = rootDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && !current.contains(name);
+            }
+        });
+        if (stale == null) {
+            return;
+        }
+        for (File file : stale) {
+            if (!file.delete() && file.exists()) {
+                LOGGER.log(Level.FINE, "Could not delete the stale scan snapshot {0}", file);
+            }
+        }
+    }
+
+    /**
+     * Reads a persisted snapshot.
+     *
+     * @param file the file.
+     * @return the snapshot, empty if the file does not exist or cannot be read.
+     */
+    @NonNull
+    public static BitbucketScanSnapshot load(@NonNull File file) {
+        XmlFile xml = new XmlFile(Items.XSTREAM2, file);
+        if (xml.exists()) {
+            try {
+                Object snapshot = xml.read();
+                if (snapshot instanceof BitbucketScanSnapshot) {
+                    return (BitbucketScanSnapshot) snapshot;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Discarding unreadable scan snapshot " + file, e);
+            }
+        }
+        return new BitbucketScanSnapshot();
+    }
+
+    /**
+     * Persists this snapshot.
+     *
+     * @param file the file.
+     */
+    public void save(@NonNull File file) {
+        try {
+            new XmlFile(Items.XSTREAM2, file).write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the scan snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Starts recording the next scan, seeded with what this snapshot knows.
+     *
+     * @return the snapshot of the next scan.
+     */
+    @NonNull
+    public BitbucketScanSnapshot nextScan() {
+        BitbucketScanSnapshot next = new BitbucketScanSnapshot();
+        next.previous = this;
+        return next;
+    }
+
+    /**
+     * Stops recording.
+     *
+     * @param complete {@code true} if the scan saw every head, the heads it did not see are then forgotten,
+     *                 otherwise they are carried over from the previous snapshot.
+     */
+    public void finish(boolean complete) {
+        BitbucketScanSnapshot previous = this.previous;
+        if (previous != null && !complete) {
+            for (Map.Entry<String, Head> entry : previous.heads.entrySet()) {
+                heads.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        this.previous = null;
+    }
+
+    /**
+     * Returns the record of a head at a hash, holding the answers of the previous scan if the head has not moved.
+     *
+     * @param head the head.
+     * @param hash the hash of the head.
+     * @return the record of the head.
+     */
+    @NonNull
+    public Head head(@NonNull SCMHead head, @NonNull String hash) {
+        // a branch may be named like a pull request head
+        String name = (head instanceof PullRequestSCMHead ? "pull-request:" : "branch:") + head.getName();
+        while (true) {
+            Head current = heads.get(name);
+            if (current != null && hash.equals(current.hash)) {
+                return current;
+            }
+            Head seeded = null;
+            BitbucketScanSnapshot previous = this.previous;
+            if (previous != null) {
+                seeded = previous.heads.get(name);
+            }
+            if (seeded == null || !hash.equals(seeded.hash)) {
+                seeded = new Head(hash);
+            }
+            if (current == null ? heads.putIfAbsent(name, seeded) == null : heads.replace(name, current, seeded)) {
+                return seeded;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of heads recorded.
+     *
+     * @return the number of heads recorded.
+     */
+    public int size() {
+        return heads.size();
+    }
+
+    private Object readResolve() {
+        if (heads == null) {
+            heads = new ConcurrentHashMap<>();
+        }
+        return this;
+    }
+
+    /**
+     * What was learned about a head at a specific hash.
+     */
+    public static final class Head {
+        /**
+         * The hash.
+         */
+        private String hash;
+        /**
+         * The commit timestamp or {@code null} if not resolved yet.
+         */
+        @CheckForNull
+        private volatile Long lastModified;
+        /**
+         * Whether each checked path exists.
+         */
+        private ConcurrentMap<String, Boolean> paths = new ConcurrentHashMap<>();
+
+        Head(@NonNull String hash) {
+            this.hash = hash;
+        }
+
+        @NonNull
+        public String getHash() {
+            return hash;
+        }
+
+        @CheckForNull
+        public Long getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns whether a path exists.
+         *
+         * @param path the path.
+         * @return whether the path exists or {@code null} if it was not checked yet.
+         */
+        @CheckForNull
+        public Boolean getExists(@NonNull String path) {
+            return paths.get(path);
+        }
+
+        public void setExists(@NonNull String path, boolean exists) {
+            paths.put(path, exists);
+        }
+
+        private Object readResolve() {
+            if (paths == null) {
+                paths = new ConcurrentHashMap<>();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Deletes the snapshots of the sources removed when an owner is reconfigured.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class CleanupListener extends ItemListener {
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof SCMSourceOwner) {
+                deleteStale((SCMSourceOwner) item);
+            }
+        }
+    }
+}
@@ -23,16 +23,15 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket;
 
-import com.google.common.base.Charsets;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
@@ -48,8 +47,31 @@ public final class JsonParser {
         return toJava(new StringReader(data), type);
     }
 
+    /**
+     * Decodes the supplied stream as it is read, without first buffering it into a {@link String}.
+     *
+     * @param data the UTF-8 encoded JSON, the caller remains responsible for closing it.
+     * @param type the type to decode.
+     * @param <T>  the type to decode.
+     * @return the decoded value.
+     * @throws IOException if the stream could not be read or decoded.
+     */
     public static <T> T toJava(InputStream data, Class<T> type) throws IOException {
-        return toJava(new InputStreamReader(data, Charsets.UTF_8), type);
+        return mapper.readValue(data, type);
+    }
+
+    /**
+     * Decodes the supplied stream as it is read, without first buffering it into a {@link String}.
+     *
+     * @param data the UTF-8 encoded JSON, the caller remains responsible for closing it.
+     * @param type the (generic) type to decode.
+     * @param <T>  the type to decode.
+     * @return the decoded value.
+     * @throws IOException if the stream could not be read or decoded.
+     * @since 2.2.11
+     */
+    public static <T> T toJava(InputStream data, TypeReference<T> type) throws IOException {
+        return mapper.readValue(data, type);
     }
 
     public static <T> T toJava(Reader data, Class<T> type) throws IOException{
@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery.Term;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.scm.impl.trait.RegexSCMHeadFilterTrait;
+import jenkins.scm.impl.trait.RegexSCMSourceFilterTrait;
+import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import jenkins.scm.impl.trait.WildcardSCMSourceFilterTrait;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Translates the name filters configured through traits into a {@link BitbucketNameQuery} that the API clients can
+ * send to Bitbucket. Only the parts of a filter that can be expressed as a superset of the names it accepts are
+ * translated, the filters themselves still apply to whatever the listing returns.
+ *
+ * @since 2.2.11
+ */
+final class NameQueryPushdown {
+
+    /**
+     * The characters that have a meaning in a regular expression.
+     */
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private NameQueryPushdown() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Builds the query narrowing the branch listing.
+     *
+     * @param traits         the traits of the source.
+     * @param requestedNames the branch names the request is scoped to or {@code null} if the request is not scoped.
+     * @return the query, {@link BitbucketNameQuery#all()} when nothing can be pushed down.
+     */
+    @NonNull
+    static BitbucketNameQuery forBranches(@NonNull Collection<? extends SCMTrait<?>> traits,
+                                          @CheckForNull Set<String> requestedNames) {
+        BitbucketNameQuery query = BitbucketNameQuery.all();
+        if (requestedNames != null && !requestedNames.isEmpty()) {
+            List<Term> terms = new ArrayList<>(requestedNames.size());
+            for (String name : requestedNames) {
+                terms.add(Term.equalTo(name));
+            }
+            query = query.and(terms);
+        }
+        for (SCMTrait<?> trait : traits) {
+            if (trait instanceof WildcardSCMHeadFilterTrait) {
+                WildcardSCMHeadFilterTrait wildcard = (WildcardSCMHeadFilterTrait) trait;
+                List<Term> terms = fromWildcards(wildcard.getIncludes());
+                if (terms != null) {
+                    query = query.and(terms);
+                }
+                for (String exclude : StringUtils.split(wildcard.getExcludes())) {
+                    if (exclude.indexOf('*') == -1) {
+                        // an excluded pattern with a wildcard cannot be expressed with "contains"
+                        query = query.and(Collections.singletonList(Term.notEqualTo(exclude)));
+                    }
+                }
+            } else if (trait instanceof RegexSCMHeadFilterTrait) {
+                List<Term> terms = fromRegex(((RegexSCMHeadFilterTrait) trait).getRegex());
+                if (terms != null) {
+                    query = query.and(terms);
+                }
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Builds the query narrowing the pull request listing by target branch. The name filters match a pull request by
+     * its target branch while older releases of the filters matched the name of the pull request itself, only the
+     * clauses listing exact names are kept since either way they discard every pull request targeting another branch.
+     * Nothing is pushed down when the branch discovery tells branches apart by their pull requests, as a branch that
+     * the filters keep may be filed as a pull request into a branch that they discard.
+     *
+     * @param traits the traits of the source.
+     * @return the query, {@link BitbucketNameQuery#all()} when nothing can be pushed down.
+     */
+    @NonNull
+    static BitbucketNameQuery forPullRequestTargets(@NonNull Collection<? extends SCMTrait<?>> traits) {
+        BitbucketNameQuery query = BitbucketNameQuery.all();
+        for (SCMTrait<?> trait : traits) {
+            if (trait instanceof BranchDiscoveryTrait) {
+                BranchDiscoveryTrait discovery = (BranchDiscoveryTrait) trait;
+                if (discovery.isBuildBranch() != discovery.isBuildBranchesWithPR()) {
+                    return query;
+                }
+            }
+        }
+        clauses:
+        for (List<Term> clause : forBranches(traits, null).getClauses()) {
+            for (Term term : clause) {
+                if (term.getOperator() != BitbucketNameQuery.Operator.EQUALS) {
+                    continue clauses;
+                }
+            }
+            query = query.and(clause);
+        }
+        return query;
+    }
+
+    /**
+     * Builds the query narrowing the repository listing of a navigator.
+     *
+     * @param traits the traits of the navigator.
+     * @return the query, {@link BitbucketNameQuery#all()} when nothing can be pushed down.
+     */
+    @NonNull
+    static BitbucketNameQuery forRepositories(@NonNull Collection<? extends SCMTrait<?>> traits) {
+        BitbucketNameQuery query = BitbucketNameQuery.all();
+        for (SCMTrait<?> trait : traits) {
+            List<Term> terms = null;
+            if (trait instanceof WildcardSCMSourceFilterTrait) {
+                terms = fromWildcards(((WildcardSCMSourceFilterTrait) trait).getIncludes());
+            } else if (trait instanceof RegexSCMSourceFilterTrait) {
+                terms = fromRegex(((RegexSCMSourceFilterTrait) trait).getRegex());
+            }
+            if (terms != null) {
+                query = query.and(terms);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Translates space separated wildcard patterns into the terms of a clause that accepts at least every name
+     * matching one of the patterns.
+     *
+     * @param patterns the space separated patterns where {@code *} matches any sequence of characters.
+     * @return the terms or {@code null} if the patterns cannot narrow the listing.
+     */
+    @CheckForNull
+    static List<Term> fromWildcards(@NonNull String patterns) {
+        String[] split = StringUtils.split(patterns);
+        if (split.length == 0) {
+            return null;
+        }
+        List<Term> terms = new ArrayList<>(split.length);
+        for (String pattern : split) {
+            if (pattern.indexOf('*') == -1) {
+                terms.add(Term.equalTo(pattern));
+                continue;
+            }
+            String longest = "";
+            for (String literal : StringUtils.split(pattern, '*')) {
+                if (literal.length() > longest.length()) {
+                    longest = literal;
+                }
+            }
+            if (longest.isEmpty()) {
+                // the pattern matches every name
+                return null;
+            }
+            terms.add(Term.contains(longest));
+        }
+        return terms;
+    }
+
+    /**
+     * Translates a regular expression into the terms of a clause that accepts at least every name it matches. Only
+     * alternations of literals and {@code .*} can be translated.
+     *
+     * @param regex the regular expression matched against the whole name.
+     * @return the terms or {@code null} if the regular expression cannot narrow the listing.
+     */
+    @CheckForNull
+    static List<Term> fromRegex(@NonNull String regex) {
+        String body = StringUtils.removeEnd(StringUtils.removeStart(regex, "^"), "$");
+        if (body.startsWith("(?:") && body.endsWith(")")) {
+            body = body.substring(3, body.length() - 1);
+        } else if (body.startsWith("(") && body.endsWith(")")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        StringBuilder patterns = new StringBuilder();
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == body.length() || REGEX_METACHARACTERS.indexOf(body.charAt(i + 1)) == -1
+                        || body.charAt(i + 1) == '*') {
+                    // character classes such as \d and a literal * are not translated
+                    return null;
+                }
+                patterns.append(body.charAt(++i));
+            } else if (c == '.' && i + 1 < body.length() && body.charAt(i + 1) == '*') {
+                patterns.append('*');
+                i++;
+            } else if (c == '|') {
+                patterns.append(' ');
+            } else if (REGEX_METACHARACTERS.indexOf(c) != -1 || Character.isWhitespace(c)) {
+                return null;
+            } else {
+                patterns.append(c);
+            }
+        }
+        if (body.isEmpty() || body.startsWith("|") || body.endsWith("|") || body.contains("||")) {
+            // an empty alternative only matches the empty name, leave such expressions to the filter
+            return null;
+        }
+        return fromWildcards(patterns.toString());
+    }
+}
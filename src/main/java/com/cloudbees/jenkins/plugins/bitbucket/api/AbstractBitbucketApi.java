@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.filesystem.BitbucketSCMFile;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import jenkins.scm.api.SCMFile;
+
+/**
+ * Base class for {@link BitbucketApi} implementations, adding the lookups and listings that let scans request only
+ * what they need. Each of them has a default implementation built on the {@link BitbucketApi} methods, so that an
+ * implementation only overrides the ones its server can do better. Implementations that do not extend this class are
+ * adapted by {@link #of(BitbucketApi)}.
+ *
+ * @since 2.2.11
+ */
+public abstract class AbstractBitbucketApi implements BitbucketApi {
+
+    /**
+     * Returns the supplied API, adapted to this class if it does not extend it.
+     *
+     * @param api the API.
+     * @return the API as an {@link AbstractBitbucketApi}.
+     */
+    @NonNull
+    public static AbstractBitbucketApi of(@NonNull BitbucketApi api) {
+        return api instanceof AbstractBitbucketApi ? (AbstractBitbucketApi) api : new Adapter(api);
+    }
+
+    /**
+     * Returns the pull requests in the repository, requesting each page of the listing only when iteration reaches
+     * it. Errors fetching a page are thrown from the iterator as a {@link BitbucketPagedIterable.FetchException}.
+     *
+     * @return the pull requests in the repository.
+     */
+    @NonNull
+    public Iterable<? extends BitbucketPullRequest> iteratePullRequests() {
+        return new BitbucketPagedIterable<BitbucketPullRequest>() {
+            @NonNull
+            @Override
+            protected Pages<BitbucketPullRequest> pages() {
+                return new SinglePage<BitbucketPullRequest>() {
+                    @Override
+                    protected List<? extends BitbucketPullRequest> fetch() throws IOException, InterruptedException {
+                        return getPullRequests();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the open pull requests in the repository whose target branch may match the supplied query, requesting
+     * each page of the listing only when iteration reaches it. Implementations push as much of the query as they can
+     * to Bitbucket and may return pull requests that do not match it, callers still have to filter the result.
+     * Errors fetching a page are thrown from the iterator as a {@link BitbucketPagedIterable.FetchException}.
+     *
+     * @param targets the query on the target branch names.
+     * @return the pull requests in the repository that may match the query.
+     */
+    @NonNull
+    public Iterable<? extends BitbucketPullRequest> iteratePullRequests(@NonNull BitbucketNameQuery targets) {
+        return iteratePullRequests();
+    }
+
+    /**
+     * Returns the branch with the specified name without listing the other branches in the repository, when the
+     * server allows it.
+     *
+     * @param branchName the name of the branch.
+     * @return the branch or {@code null} if the branch does not exist.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    public BitbucketBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        for (BitbucketBranch branch : getBranches()) {
+            if (branchName.equals(branch.getName())) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the branches in the repository, requesting each page of the listing only when iteration reaches it.
+     * Errors fetching a page are thrown from the iterator as a {@link BitbucketPagedIterable.FetchException}.
+     *
+     * @return the branches in the repository.
+     */
+    @NonNull
+    public Iterable<? extends BitbucketBranch> iterateBranches() {
+        return new BitbucketPagedIterable<BitbucketBranch>() {
+            @NonNull
+            @Override
+            protected Pages<BitbucketBranch> pages() {
+                return new SinglePage<BitbucketBranch>() {
+                    @Override
+                    protected List<? extends BitbucketBranch> fetch() throws IOException, InterruptedException {
+                        return getBranches();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the branches in the repository that may match the supplied query, requesting each page of the listing
+     * only when iteration reaches it. Implementations push as much of the query as they can to Bitbucket and may
+     * return branches that do not match it, callers still have to filter the result.
+     * Errors fetching a page are thrown from the iterator as a {@link BitbucketPagedIterable.FetchException}.
+     *
+     * @param query the query on the branch names.
+     * @return the branches in the repository that may match the query.
+     */
+    @NonNull
+    public Iterable<? extends BitbucketBranch> iterateBranches(@NonNull BitbucketNameQuery query) {
+        return iterateBranches();
+    }
+
+    /**
+     * Returns the repositories where the user has the given role, narrowed by a query on their names. The result may
+     * include repositories the query does not accept, callers still have to filter it.
+     *
+     * @param role  Filter repositories by the owner having this role in.
+     *              See {@link UserRoleInRepository} for more information.
+     *              Use role = null if the repoOwner is a team ID.
+     * @param names the query on the repository names.
+     * @return the repositories list (it can be empty)
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    public List<? extends BitbucketRepository> getRepositories(@CheckForNull UserRoleInRepository role,
+                                                               @NonNull BitbucketNameQuery names)
+            throws IOException, InterruptedException {
+        return getRepositories(role);
+    }
+
+    /**
+     * Returns the repositories where the user has the given role that changed since the supplied time, most recently
+     * changed first.
+     *
+     * @param role  Filter repositories by the owner having this role in.
+     *              See {@link UserRoleInRepository} for more information.
+     *              Use role = null if the repoOwner is a team ID.
+     * @param since the time, in milliseconds since the epoch, of the oldest change of interest.
+     * @return the changed repositories or {@code null} if the server does not report when repositories changed.
+     * @throws IOException if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @CheckForNull
+    public List<? extends BitbucketRepository> getRepositoriesChangedSince(@CheckForNull UserRoleInRepository role,
+                                                                           long since)
+            throws IOException, InterruptedException {
+        return null;
+    }
+
+    /**
+     * The pages of a listing that is fetched at once.
+     *
+     * @param <V> the type of the values.
+     */
+    private abstract static class SinglePage<V> implements BitbucketPagedIterable.Pages<V> {
+        private boolean fetched;
+
+        /**
+         * Fetches the listing.
+         *
+         * @return the values of the listing.
+         */
+        protected abstract List<? extends V> fetch() throws IOException, InterruptedException;
+
+        @Override
+        public List<? extends V> nextPage() throws IOException, InterruptedException {
+            if (fetched) {
+                return null;
+            }
+            fetched = true;
+            return fetch();
+        }
+    }
+
+    /**
+     * Adapts an implementation that does not extend {@link AbstractBitbucketApi}.
+     */
+    private static class Adapter extends AbstractBitbucketApi {
+        private final BitbucketApi delegate;
+
+        Adapter(BitbucketApi delegate) {
+            this.delegate = delegate;
+        }
+
+        @NonNull
+        @Override
+        public String getOwner() {
+            return delegate.getOwner();
+        }
+
+        @CheckForNull
+        @Override
+        public String getRepositoryName() {
+            return delegate.getRepositoryName();
+        }
+
+        @NonNull
+        @Override
+        public String getRepositoryUri(@NonNull BitbucketRepositoryType type,
+                                       @NonNull BitbucketRepositoryProtocol protocol,
+                                       @CheckForNull Integer protocolPortOverride,
+                                       @NonNull String owner,
+                                       @NonNull String repository) {
+            return delegate.getRepositoryUri(type, protocol, protocolPortOverride, owner, repository);
+        }
+
+        @NonNull
+        @Override
+        public List<? extends BitbucketPullRequest> getPullRequests() throws IOException, InterruptedException {
+            return delegate.getPullRequests();
+        }
+
+        @NonNull
+        @Override
+        public BitbucketPullRequest getPullRequestById(@NonNull Integer id) throws IOException, InterruptedException {
+            return delegate.getPullRequestById(id);
+        }
+
+        @NonNull
+        @Override
+        public BitbucketRepository getRepository() throws IOException, InterruptedException {
+            return delegate.getRepository();
+        }
+
+        @Override
+        public void postCommitComment(@NonNull String hash, @NonNull String comment)
+                throws IOException, InterruptedException {
+            delegate.postCommitComment(hash, comment);
+        }
+
+        @Override
+        public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path)
+                throws IOException, InterruptedException {
+            return delegate.checkPathExists(branchOrHash, path);
+        }
+
+        @CheckForNull
+        @Override
+        public String getDefaultBranch() throws IOException, InterruptedException {
+            return delegate.getDefaultBranch();
+        }
+
+        @NonNull
+        @Override
+        public List<? extends BitbucketBranch> getBranches() throws IOException, InterruptedException {
+            return delegate.getBranches();
+        }
+
+        @CheckForNull
+        @Override
+        public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException, InterruptedException {
+            return delegate.resolveCommit(hash);
+        }
+
+        @NonNull
+        @Override
+        public String resolveSourceFullHash(@NonNull BitbucketPullRequest pull)
+                throws IOException, InterruptedException {
+            return delegate.resolveSourceFullHash(pull);
+        }
+
+        @Override
+        public void registerCommitWebHook(@NonNull BitbucketWebHook hook) throws IOException, InterruptedException {
+            delegate.registerCommitWebHook(hook);
+        }
+
+        @Override
+        public void updateCommitWebHook(@NonNull BitbucketWebHook hook) throws IOException, InterruptedException {
+            delegate.updateCommitWebHook(hook);
+        }
+
+        @Override
+        public void removeCommitWebHook(@NonNull BitbucketWebHook hook) throws IOException, InterruptedException {
+            delegate.removeCommitWebHook(hook);
+        }
+
+        @NonNull
+        @Override
+        public List<? extends BitbucketWebHook> getWebHooks() throws IOException, InterruptedException {
+            return delegate.getWebHooks();
+        }
+
+        @CheckForNull
+        @Override
+        public BitbucketTeam getTeam() throws IOException, InterruptedException {
+            return delegate.getTeam();
+        }
+
+        @NonNull
+        @Override
+        public List<? extends BitbucketRepository> getRepositories(@CheckForNull UserRoleInRepository role)
+                throws IOException, InterruptedException {
+            return delegate.getRepositories(role);
+        }
+
+        @NonNull
+        @Override
+        public List<? extends BitbucketRepository> getRepositories() throws IOException, InterruptedException {
+            return delegate.getRepositories();
+        }
+
+        @Override
+        public void postBuildStatus(@NonNull BitbucketBuildStatus status) throws IOException, InterruptedException {
+            delegate.postBuildStatus(status);
+        }
+
+        @Override
+        public boolean isPrivate() throws IOException, InterruptedException {
+            return delegate.isPrivate();
+        }
+
+        @Override
+        public Iterable<SCMFile> getDirectoryContent(BitbucketSCMFile parent)
+                throws IOException, InterruptedException {
+            return delegate.getDirectoryContent(parent);
+        }
+
+        @Override
+        public InputStream getFileContent(BitbucketSCMFile file) throws IOException, InterruptedException {
+            return delegate.getFileContent(file);
+        }
+    }
+}
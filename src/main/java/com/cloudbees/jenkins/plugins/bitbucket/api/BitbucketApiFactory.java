@@ -1,12 +1,21 @@
 package com.cloudbees.jenkins.plugins.bitbucket.api;
 
+import com.cloudbees.jenkins.plugins.bitbucket.client.Cache;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
+import hudson.Util;
+import hudson.util.Secret;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Factory for creating {@link BitbucketApi} instances to connect to a given server {@link URL}.
@@ -15,6 +24,24 @@ import java.net.URL;
  */
 public abstract class BitbucketApiFactory implements ExtensionPoint {
 
+    /**
+     * The number of clients kept by {@link #getInstance(String, StandardUsernamePasswordCredentials, String, String)}.
+     */
+    private static final int MAX_SHARED_INSTANCES = Integer.getInteger(
+            BitbucketApiFactory.class.getName() + ".maxSharedInstances", 500);
+
+    /**
+     * How long, in minutes, an unused shared client is kept.
+     */
+    private static final int SHARED_INSTANCE_IDLE_MINUTES = Integer.getInteger(
+            BitbucketApiFactory.class.getName() + ".sharedInstanceIdleMinutes", 30);
+
+    /**
+     * The shared clients keyed by factory, endpoint, credentials, owner and repository.
+     */
+    private static final Cache<String, BitbucketApi> sharedInstances = new Cache<String, BitbucketApi>(
+            SHARED_INSTANCE_IDLE_MINUTES, TimeUnit.MINUTES, MAX_SHARED_INSTANCES).expireAfterAccess();
+
     /**
      * Tests if the supplied URL is supported by this factory.
      *
@@ -23,6 +50,18 @@ public abstract class BitbucketApiFactory implements ExtensionPoint {
      */
     protected abstract boolean isMatch(@Nullable String serverUrl);
 
+    /**
+     * Tests if the instances created by this factory can be shared between callers asking for the same endpoint,
+     * credentials, owner and repository. Shareable instances must be thread safe and must not hold state that goes
+     * stale beyond what a cache of the repository metadata would.
+     *
+     * @return {@code true} if the created instances can be shared.
+     * @since 2.2.11
+     */
+    protected boolean isShareable() {
+        return false;
+    }
+
     /**
      * Creates a {@link BitbucketApi} for the specified URL with the supplied credentials, owner and (optional)
      * repository.
@@ -62,4 +101,64 @@ public abstract class BitbucketApiFactory implements ExtensionPoint {
         }
         throw new IllegalArgumentException("Unsupported Bitbucket server URL: " + serverUrl);
     }
+
+    /**
+     * Returns a {@link BitbucketApi} for the specified URL with the supplied credentials, owner and (optional)
+     * repository, reusing the instance handed out to a previous caller if the factory allows it. Shared instances are
+     * evicted once they have not been used for a while, which bounds how long their cached repository metadata lives.
+     *
+     * @param serverUrl   the server URL.
+     * @param credentials the (optional) credentials.
+     * @param owner       the owner name.
+     * @param repository  the (optional) repository name.
+     * @return the {@link BitbucketApi}.
+     * @throws IllegalArgumentException if the supplied URL is not supported.
+     * @since 2.2.11
+     */
+    @NonNull
+    @Restricted(NoExternalUse.class)
+    public static BitbucketApi getInstance(@Nullable final String serverUrl,
+                                           @Nullable final StandardUsernamePasswordCredentials credentials,
+                                           @NonNull final String owner,
+                                           @CheckForNull final String repository) {
+        for (final BitbucketApiFactory factory : ExtensionList.lookup(BitbucketApiFactory.class)) {
+            if (factory.isMatch(serverUrl)) {
+                if (!factory.isShareable()) {
+                    return factory.create(serverUrl, credentials, owner, repository);
+                }
+                try {
+                    return sharedInstances.get(sharedKey(factory, serverUrl, credentials, owner, repository),
+                            new Callable<BitbucketApi>() {
+                                @Override
+                                public BitbucketApi call() {
+                                    return factory.create(serverUrl, credentials, owner, repository);
+                                }
+                            });
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unsupported Bitbucket server URL: " + serverUrl);
+    }
+
+    private static String sharedKey(BitbucketApiFactory factory, String serverUrl,
+                                    StandardUsernamePasswordCredentials credentials, String owner, String repository) {
+        StringBuilder key = new StringBuilder(factory.getClass().getName()).append('\n');
+        key.append(serverUrl == null ? "" : BitbucketEndpointConfiguration.normalizeServerUrl(serverUrl)).append('\n');
+        if (credentials != null) {
+            // a digest of the secret so that updated credentials get a client of their own
+            key.append(credentials.getId()).append(':').append(Util.getDigestOf(
+                    credentials.getUsername() + ':' + Secret.toString(credentials.getPassword())));
+        }
+        key.append('\n').append(owner).append('/').append(repository == null ? "" : repository);
+        return key.toString();
+    }
 }
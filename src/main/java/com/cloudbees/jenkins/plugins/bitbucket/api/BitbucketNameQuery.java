@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A server side filter on the name of the branches (or repositories) to list, expressed as a conjunction of clauses
+ * where each clause is a disjunction of {@link Term}s.
+ * <p>
+ * A query only narrows a listing, it never replaces the client side filters: implementations may return any superset
+ * of the matching names (including everything when they cannot express the query) and callers must keep applying
+ * their own filters to the result.
+ *
+ * @since 2.2.11
+ */
+public final class BitbucketNameQuery {
+
+    private static final BitbucketNameQuery ALL = new BitbucketNameQuery(Collections.<List<Term>>emptyList());
+
+    /**
+     * The clauses, all of which must hold.
+     */
+    @NonNull
+    private final List<List<Term>> clauses;
+
+    private BitbucketNameQuery(@NonNull List<List<Term>> clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * Returns the query that matches every name.
+     *
+     * @return the query that matches every name.
+     */
+    @NonNull
+    public static BitbucketNameQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a query that additionally requires the name to match at least one of the supplied terms.
+     *
+     * @param anyOf the terms of the new clause.
+     * @return the narrowed query.
+     */
+    @NonNull
+    public BitbucketNameQuery and(@NonNull Collection<Term> anyOf) {
+        if (anyOf.isEmpty()) {
+            throw new IllegalArgumentException("A clause needs at least one term");
+        }
+        List<List<Term>> result = new ArrayList<>(clauses);
+        result.add(Collections.unmodifiableList(new ArrayList<>(anyOf)));
+        return new BitbucketNameQuery(Collections.unmodifiableList(result));
+    }
+
+    /**
+     * Returns {@code true} if this query does not narrow the listing at all.
+     *
+     * @return {@code true} if this query does not narrow the listing at all.
+     */
+    public boolean isMatchAll() {
+        return clauses.isEmpty();
+    }
+
+    /**
+     * Returns the clauses of this query, all of which must hold.
+     *
+     * @return the clauses of this query.
+     */
+    @NonNull
+    public List<List<Term>> getClauses() {
+        return clauses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof BitbucketNameQuery && clauses.equals(((BitbucketNameQuery) o).clauses);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return clauses.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return isMatchAll() ? "*" : clauses.toString();
+    }
+
+    /**
+     * The comparisons a {@link Term} can make.
+     */
+    public enum Operator {
+        /**
+         * The name is exactly the value.
+         */
+        EQUALS,
+        /**
+         * The name is anything but the value.
+         */
+        NOT_EQUALS,
+        /**
+         * The name contains the value, ignoring case.
+         */
+        CONTAINS
+    }
+
+    /**
+     * A single comparison of the name with a value.
+     */
+    public static final class Term {
+        @NonNull
+        private final Operator operator;
+        @NonNull
+        private final String value;
+
+        private Term(@NonNull Operator operator, @NonNull String value) {
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @NonNull
+        public static Term equalTo(@NonNull String value) {
+            return new Term(Operator.EQUALS, value);
+        }
+
+        @NonNull
+        public static Term notEqualTo(@NonNull String value) {
+            return new Term(Operator.NOT_EQUALS, value);
+        }
+
+        @NonNull
+        public static Term contains(@NonNull String value) {
+            return new Term(Operator.CONTAINS, value);
+        }
+
+        @NonNull
+        public Operator getOperator() {
+            return operator;
+        }
+
+        @NonNull
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Term)) {
+                return false;
+            }
+            Term term = (Term) o;
+            return operator == term.operator && value.equals(term.value);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return 31 * operator.hashCode() + value.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return operator + "(" + value + ")";
+        }
+    }
+}
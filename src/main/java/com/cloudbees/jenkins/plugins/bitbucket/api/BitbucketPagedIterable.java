@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.api;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link Iterable} over a paged API listing that only requests the next page when iteration reaches it, so that a
+ * consumer which stops early never downloads the pages it did not need. Only the page being iterated is held in
+ * memory: each {@link #iterator()} walks the listing again from its first page, so consumers that need to walk a
+ * listing several times should keep what they need from the first walk (or use {@link #toList()}).
+ * <p>
+ * Errors fetching a page surface from {@link Iterator#hasNext()} as a {@link FetchException}.
+ *
+ * @param <V> the type of the values.
+ * @since 2.2.11
+ */
+public abstract class BitbucketPagedIterable<V> implements Iterable<V> {
+
+    /**
+     * Starts a new walk of the listing, from its first page.
+     *
+     * @return the pages of the new walk.
+     */
+    @NonNull
+    protected abstract Pages<V> pages();
+
+    /**
+     * Fetches all the pages of the listing.
+     *
+     * @return all the values of the listing.
+     * @throws IOException          if there was a network communications error.
+     * @throws InterruptedException if interrupted while waiting on remote communications.
+     */
+    @NonNull
+    public List<V> toList() throws IOException, InterruptedException {
+        Pages<V> pages = pages();
+        List<V> values = new ArrayList<>();
+        for (List<? extends V> page = fetch(pages); page != null; page = fetch(pages)) {
+            values.addAll(page);
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<V> iterator() {
+        final Pages<V> pages = pages();
+        return new Iterator<V>() {
+            /**
+             * The values of the current page, {@code null} once the last page has been iterated.
+             */
+            private Iterator<? extends V> page = Collections.<V>emptyList().iterator();
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (page != null && !page.hasNext()) {
+                        List<? extends V> values = fetch(pages);
+                        page = values == null ? null : values.iterator();
+                    }
+                    return page != null;
+                } catch (IOException | InterruptedException e) {
+                    throw new FetchException(e);
+                }
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Fetches the next page of a walk, if any.
+     *
+     * @return the values of the page or {@code null} when there are no more pages.
+     */
+    @CheckForNull
+    private static <V> List<? extends V> fetch(Pages<V> pages) throws IOException, InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return pages.nextPage();
+    }
+
+    /**
+     * The pages of one walk of a listing.
+     *
+     * @param <V> the type of the values.
+     */
+    protected interface Pages<V> {
+        /**
+         * Fetches the next page of the walk.
+         *
+         * @return the values of the next page or {@code null} when there are no more pages.
+         * @throws IOException          if there was a network communications error.
+         * @throws InterruptedException if interrupted while waiting on remote communications.
+         */
+        @CheckForNull
+        List<? extends V> nextPage() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Carries the checked exception thrown while fetching a page through {@link Iterator#hasNext()}.
+     */
+    public static class FetchException extends BitbucketException {
+
+        private static final long serialVersionUID = 1L;
+
+        FetchException(Exception cause) {
+            super("Could not fetch the next page: " + cause.getMessage(), cause);
+        }
+
+        /**
+         * Rethrows the checked exception.
+         *
+         * @throws IOException          if a page could not be fetched.
+         * @throws InterruptedException if interrupted while fetching a page.
+         */
+        public void unwrap() throws IOException, InterruptedException {
+            Throwable cause = getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw this;
+        }
+    }
+}
@@ -25,10 +25,12 @@
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
 import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
-import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import com.cloudbees.jenkins.plugins.bitbucket.api.AbstractBitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketException;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
@@ -49,12 +51,18 @@ import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketReposi
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketRepositorySource;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.PaginatedBitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCommitCache;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointHttpClient;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRateLimiter;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRequestCoalescer;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketResponseCache;
 import com.cloudbees.jenkins.plugins.bitbucket.filesystem.BitbucketSCMFile;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.damnhandy.uri.template.UriTemplate;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import hudson.ProxyConfiguration;
 import hudson.Util;
 import hudson.util.Secret;
 import java.io.ByteArrayOutputStream;
@@ -62,12 +70,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -75,18 +82,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMFile;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
-import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -96,41 +98,39 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.config.SocketConfig;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.codehaus.jackson.type.TypeReference;
 
-public class BitbucketCloudApiClient implements BitbucketApi {
+public class BitbucketCloudApiClient extends AbstractBitbucketApi {
     private static final Logger LOGGER = Logger.getLogger(BitbucketCloudApiClient.class.getName());
     private static final HttpHost API_HOST = HttpHost.create("https://api.bitbucket.org");
     private static final String V2_API_BASE_URL = "https://api.bitbucket.org/2.0/repositories";
     private static final String V2_TEAMS_API_BASE_URL = "https://api.bitbucket.org/2.0/teams";
     private static final String REPO_URL_TEMPLATE = V2_API_BASE_URL + "{/owner,repo}";
     private static final int API_RATE_LIMIT_CODE = 429;
-    private static final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-    private CloseableHttpClient client;
-    private HttpClientContext context;
+    /**
+     * The total number of repositories kept by {@link #cachedRepositories} across all owners.
+     */
+    private static final int MAX_CACHED_REPOSITORIES = 50000;
     private final String owner;
     private final String repositoryName;
     private final UsernamePasswordCredentials credentials;
-    static {
-        connectionManager.setDefaultMaxPerRoute(20);
-        connectionManager.setMaxTotal(22);
-        connectionManager.setSocketConfig(API_HOST, SocketConfig.custom().setSoTimeout(60 * 1000).build());
-    }
-    private static Cache<String, BitbucketTeam> cachedTeam = new Cache(6, TimeUnit.HOURS);
-    private static Cache<String, List<BitbucketCloudRepository>> cachedRepositories = new Cache(3, TimeUnit.HOURS);
-    private transient BitbucketRepository cachedRepository;
-    private transient String cachedDefaultBranch;
+    private static final Cache<String, BitbucketTeam> cachedTeam =
+            new Cache<String, BitbucketTeam>(6, TimeUnit.HOURS).staleWhileRevalidate(1, TimeUnit.HOURS);
+    private static final Cache<String, List<BitbucketCloudRepository>> cachedRepositories =
+            new Cache<String, List<BitbucketCloudRepository>>(3, TimeUnit.HOURS, 100, MAX_CACHED_REPOSITORIES,
+                    new Cache.Weigher<String, List<BitbucketCloudRepository>>() {
+                        @Override
+                        public int weigh(@NonNull String key, List<BitbucketCloudRepository> value) {
+                            return value == null ? 0 : value.size();
+                        }
+                    }).staleWhileRevalidate(1, TimeUnit.HOURS);
+    private transient volatile BitbucketRepository cachedRepository;
+    private transient volatile String cachedDefaultBranch;
 
     public BitbucketCloudApiClient(String owner, String repositoryName, StandardUsernamePasswordCredentials creds) {
         if (creds != null) {
@@ -140,34 +140,6 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         }
         this.owner = owner;
         this.repositoryName = repositoryName;
-
-        // Create Http client
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-        httpClientBuilder.setConnectionManager(connectionManager);
-        httpClientBuilder.setConnectionManagerShared(true);
-
-        if (credentials != null) {
-            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, credentials);
-            AuthCache authCache = new BasicAuthCache();
-            authCache.put(API_HOST, new BasicScheme());
-            context = HttpClientContext.create();
-            context.setCredentialsProvider(credentialsProvider);
-            context.setAuthCache(authCache);
-        }
-
-        setClientProxyParams("bitbucket.org", httpClientBuilder);
-
-        this.client = httpClientBuilder.build();
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        if (client != null) {
-            client.close();
-        }
-
-        super.finalize();
     }
 
     /**
@@ -237,37 +209,57 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @NonNull
     @Override
     public List<BitbucketPullRequestValue> getPullRequests() throws InterruptedException, IOException {
-        List<BitbucketPullRequestValue> pullRequests = new ArrayList<BitbucketPullRequestValue>();
-        int pageNumber = 1;
-        UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests{?page,pagelen}")
+        return iteratePullRequests().toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketPullRequestValue> iteratePullRequests() {
+        return iteratePullRequests(BitbucketNameQuery.all());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketPullRequestValue> iteratePullRequests(
+            @NonNull BitbucketNameQuery targets) {
+        final UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests{?page,pagelen,q}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
-                .set("page", pageNumber)
                 .set("pagelen", 100);
-        String url = template.expand();
-
-        String response = getRequest(url);
-        BitbucketPullRequests page;
-        try {
-            page = JsonParser.toJava(response, BitbucketPullRequests.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
+        if (!targets.isMatchAll()) {
+            // spell out the state, the default of the listing is not documented to apply along with a query
+            template.set("q", "state = \"OPEN\" AND " + toBBQL(targets, "destination.branch.name"));
         }
-        pullRequests.addAll(page.getValues());
-        while (page.getNext() != null) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            pageNumber++;
-            response = getRequest(url = template.set("page", pageNumber).expand());
-            try {
-                page = JsonParser.toJava(response, BitbucketPullRequests.class);
-            } catch (IOException e) {
-                throw new IOException("I/O error when parsing response from URL: " + url, e);
+        return new BitbucketPagedIterable<BitbucketPullRequestValue>() {
+            @NonNull
+            @Override
+            protected Pages<BitbucketPullRequestValue> pages() {
+                return new Pages<BitbucketPullRequestValue>() {
+                    private int pageNumber = 1;
+                    private boolean lastPage;
+
+                    @Override
+                    public List<BitbucketPullRequestValue> nextPage() throws IOException, InterruptedException {
+                        if (lastPage) {
+                            return null;
+                        }
+                        String url;
+                        synchronized (template) {
+                            url = template.set("page", pageNumber++).expand();
+                        }
+                        BitbucketPullRequests page = getRequest(url, new TypeReference<BitbucketPullRequests>(){});
+                        lastPage = page.getNext() == null;
+                        return page.getValues();
+                    }
+                };
             }
-            pullRequests.addAll(page.getValues());
-        }
-        return pullRequests;
+        };
     }
 
     /**
@@ -281,12 +273,7 @@ public class BitbucketCloudApiClient implements BitbucketApi {
                 .set("repo", repositoryName)
                 .set("id", id)
                 .expand();
-        String response = getRequest(url);
-        try {
-            return JsonParser.toJava(response, BitbucketPullRequestValue.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
-        }
+        return getRequest(url, new TypeReference<BitbucketPullRequestValue>(){});
     }
 
     /**
@@ -298,19 +285,16 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         if (repositoryName == null) {
             throw new UnsupportedOperationException("Cannot get a repository from an API instance that is not associated with a repository");
         }
-        if (cachedRepository == null) {
+        BitbucketRepository repository = cachedRepository;
+        if (repository == null) {
             String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE)
                     .set("owner", owner)
                     .set("repo", repositoryName)
                     .expand();
-            String response = getRequest(url);
-            try {
-                cachedRepository =  JsonParser.toJava(response, BitbucketCloudRepository.class);
-            } catch (IOException e) {
-                throw new IOException("I/O error when parsing response from URL: " + url, e);
-            }
+            repository = getRequest(url, new TypeReference<BitbucketCloudRepository>(){});
+            cachedRepository = repository;
         }
-        return cachedRepository;
+        return repository;
     }
 
     /**
@@ -338,6 +322,11 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @Override
     public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path)
             throws IOException, InterruptedException {
+        BitbucketCommitCache cache = getHttpClient().getCommitCache();
+        Boolean exists = cache.getCachedPathExists(credentials, owner, repositoryName, branchOrHash, path);
+        if (exists != null) {
+            return exists;
+        }
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash,path}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
@@ -345,6 +334,10 @@ public class BitbucketCloudApiClient implements BitbucketApi {
                 .set("path", path)
                 .expand();
         int status = headRequestStatus(url);
+        if (status == HttpStatus.SC_OK || status == HttpStatus.SC_NOT_FOUND) {
+            cache.cachePathExists(credentials, owner, repositoryName, branchOrHash, path,
+                    status == HttpStatus.SC_OK);
+        }
         return status == HttpStatus.SC_OK;
     }
 
@@ -354,7 +347,8 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @CheckForNull
     @Override
     public String getDefaultBranch() throws IOException, InterruptedException {
-        if (cachedDefaultBranch == null) {
+        String defaultBranch = cachedDefaultBranch;
+        if (defaultBranch == null) {
             String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/{?fields}")
                     .set("owner", owner)
                     .set("repo", repositoryName)
@@ -371,10 +365,11 @@ public class BitbucketCloudApiClient implements BitbucketApi {
             Map resp = JsonParser.toJava(response, Map.class);
             Map mainbranch = (Map) resp.get("mainbranch");
             if (mainbranch != null) {
-                cachedDefaultBranch = (String) mainbranch.get("name");
+                defaultBranch = (String) mainbranch.get("name");
+                cachedDefaultBranch = defaultBranch;
             }
         }
-        return cachedDefaultBranch;
+        return defaultBranch;
     }
 
     /**
@@ -383,18 +378,125 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @NonNull
     @Override
     public List<BitbucketCloudBranch> getBranches() throws IOException, InterruptedException {
-        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/refs/branches{?pagelen,q}")
+        return iterateBranches().toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    public BitbucketCloudBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/refs/branches{/name}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
-                .set("pagelen", 100)
-                .set("q","(name=\"master\" OR name=\"trunk\" OR name=\"staging\" OR name=\"kubernetes-helm\" OR name=\"live\" OR name=\"dev\" OR name=\"dev-lukas\")")
+                .set("name", branchName)
                 .expand();
-        String response = getRequest(url);
+        BitbucketCloudBranch branch;
         try {
-            return getAllBranches(response);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
+            branch = getRequest(url, new TypeReference<BitbucketCloudBranch>(){});
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        // Inactive branches are not listed by iterateBranches() either
+        return branch.isActive() ? branch : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketCloudBranch> iterateBranches() {
+        return iterateBranches(BitbucketNameQuery.all());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketCloudBranch> iterateBranches(@NonNull BitbucketNameQuery query) {
+        UriTemplate template = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/refs/branches{?pagelen,q}")
+                .set("owner", owner)
+                .set("repo", repositoryName)
+                .set("pagelen", 100);
+        if (!query.isMatchAll()) {
+            template.set("q", toBBQL(query, "name"));
+        }
+        final String url = template.expand();
+        return new BitbucketPagedIterable<BitbucketCloudBranch>() {
+            @NonNull
+            @Override
+            protected Pages<BitbucketCloudBranch> pages() {
+                return new Pages<BitbucketCloudBranch>() {
+                    private String next = url;
+
+                    @Override
+                    public List<BitbucketCloudBranch> nextPage() throws IOException, InterruptedException {
+                        if (next == null) {
+                            return null;
+                        }
+                        String pageUrl = next;
+                        BitbucketCloudPage<BitbucketCloudBranch> page =
+                                getRequest(pageUrl, new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){});
+                        next = page.isLastPage() ? null : page.getNext();
+                        // Filter the inactive branches out
+                        List<BitbucketCloudBranch> activeBranches = new ArrayList<>();
+                        for (BitbucketCloudBranch branch : page.getValues()) {
+                            if (branch.isActive()) {
+                                activeBranches.add(branch);
+                            }
+                        }
+                        return activeBranches;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Renders a query in the Bitbucket query language understood by the {@code q} parameter of the listings.
+     *
+     * @param query the query.
+     * @param field the field the query applies to.
+     * @return the {@code q} parameter value.
+     */
+    @NonNull
+    static String toBBQL(@NonNull BitbucketNameQuery query, @NonNull String field) {
+        StringBuilder result = new StringBuilder();
+        for (List<BitbucketNameQuery.Term> clause : query.getClauses()) {
+            if (result.length() > 0) {
+                result.append(" AND ");
+            }
+            result.append('(');
+            boolean first = true;
+            for (BitbucketNameQuery.Term term : clause) {
+                if (!first) {
+                    result.append(" OR ");
+                }
+                first = false;
+                result.append(field);
+                switch (term.getOperator()) {
+                    case EQUALS:
+                        result.append(" = ");
+                        break;
+                    case NOT_EQUALS:
+                        result.append(" != ");
+                        break;
+                    case CONTAINS:
+                        result.append(" ~ ");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported operator " + term.getOperator());
+                }
+                result.append('"')
+                        .append(term.getValue().replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append('"');
+            }
+            result.append(')');
         }
+        return result.toString();
     }
 
     /**
@@ -403,22 +505,23 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @Override
     @CheckForNull
     public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException, InterruptedException {
+        BitbucketCommitCache cache = getHttpClient().getCommitCache();
+        BitbucketCommit commit = cache.getCachedCommit(credentials, owner, repositoryName, hash);
+        if (commit != null) {
+            return commit;
+        }
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/commit/{hash}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
                 .set("hash", hash)
                 .expand();
-        String response;
         try {
-            response = getRequest(url);
+            commit = getRequest(url, new TypeReference<BitbucketCloudCommit>(){});
         } catch (FileNotFoundException e) {
             return null;
         }
-        try {
-            return JsonParser.toJava(response, BitbucketCloudCommit.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when parsing response from URL: " + url, e);
-        }
+        cache.cacheCommit(credentials, owner, repositoryName, hash, commit);
+        return commit;
     }
 
     /**
@@ -427,6 +530,25 @@ public class BitbucketCloudApiClient implements BitbucketApi {
     @NonNull
     @Override
     public String resolveSourceFullHash(@NonNull BitbucketPullRequest pull) throws IOException, InterruptedException {
+        // the listings only report an abbreviated hash, which does not change as long as the pull request does not
+        String shortHash = pull.getSource().getCommit().getHash();
+        BitbucketCommitCache cache = getHttpClient().getCommitCache();
+        if (shortHash != null) {
+            String fullHash = cache.getCachedPullRequestHash(credentials, owner, repositoryName, pull.getId(),
+                    shortHash);
+            if (fullHash != null) {
+                return fullHash;
+            }
+        }
+        String fullHash = fetchSourceFullHash(pull);
+        if (shortHash != null) {
+            cache.cachePullRequestHash(credentials, owner, repositoryName, pull.getId(), shortHash, fullHash);
+        }
+        return fullHash;
+    }
+
+    @NonNull
+    private String fetchSourceFullHash(@NonNull BitbucketPullRequest pull) throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/pullrequests/{pullId}/commits{?fields,pagelen}")
                 .set("owner", owner)
                 .set("repo", repositoryName)
@@ -595,27 +717,7 @@ public class BitbucketCloudApiClient implements BitbucketApi {
             return cachedRepositories.get(cacheKey.toString(), new Callable<List<BitbucketCloudRepository>>() {
                 @Override
                 public List<BitbucketCloudRepository> call() throws Exception {
-                    List<BitbucketCloudRepository> repositories = new ArrayList<BitbucketCloudRepository>();
-                    Integer pageNumber = 1;
-                    String url, response;
-                    PaginatedBitbucketRepository page;
-                    do {
-                        response = getRequest(url = template.set("page", pageNumber).expand());
-                        try {
-                            page = JsonParser.toJava(response, PaginatedBitbucketRepository.class);
-                            repositories.addAll(page.getValues());
-                        } catch (IOException e) {
-                            throw new IOException("I/O error when parsing response from URL: " + url, e);
-                        }
-                        pageNumber++;
-                    } while (page.getNext() != null);
-                    Collections.sort(repositories, new Comparator<BitbucketCloudRepository>() {
-                        @Override
-                        public int compare(BitbucketCloudRepository o1, BitbucketCloudRepository o2) {
-                            return o1.getRepositoryName().compareTo(o2.getRepositoryName());
-                        }
-                    });
-                    return repositories;
+                    return listRepositories(template);
                 }
             });
         } catch (ExecutionException ex) {
@@ -630,59 +732,160 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return getRepositories(null);
     }
 
-    private void setClientProxyParams(String host, HttpClientBuilder builder) {
-        Jenkins jenkins = Jenkins.getInstance();
-        ProxyConfiguration proxyConfig = null;
-        if (jenkins != null) {
-            proxyConfig = jenkins.proxy;
-        }
-
-        Proxy proxy = Proxy.NO_PROXY;
-        if (proxyConfig != null) {
-            proxy = proxyConfig.createProxy(host);
-        }
-
-        if (proxy.type() != Proxy.Type.DIRECT) {
-            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
-            LOGGER.fine("Jenkins proxy: " + proxy.address());
-            builder.setProxy(new HttpHost(proxyAddress.getHostName(), proxyAddress.getPort()));
-            String username = proxyConfig.getUserName();
-            String password = proxyConfig.getPassword();
-            if (username != null && !"".equals(username.trim())) {
-                LOGGER.fine("Using proxy authentication (user=" + username + ")");
-                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
-                AuthCache authCache = new BasicAuthCache();
-                authCache.put(HttpHost.create(proxyAddress.getHostName()), new BasicScheme());
-                context = HttpClientContext.create();
-                context.setCredentialsProvider(credentialsProvider);
-                context.setAuthCache(authCache);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The query is matched against the full name of the repositories and the narrowed listing is not cached, it is
+     * cheap to fetch again and a new repository matching the query shows up on the next scan.
+     */
+    @NonNull
+    @Override
+    public List<BitbucketCloudRepository> getRepositories(@CheckForNull UserRoleInRepository role,
+                                                          @NonNull BitbucketNameQuery names)
+            throws IOException, InterruptedException {
+        BitbucketNameQuery fullNames = onFullNames(names);
+        if (fullNames.isMatchAll()) {
+            return getRepositories(role);
+        }
+        UriTemplate template = UriTemplate.fromTemplate(V2_API_BASE_URL + "{/owner}{?role,q,page,pagelen}")
+                .set("owner", owner)
+                .set("q", toBBQL(fullNames, "full_name"))
+                .set("pagelen", 100);
+        if (role != null && getLogin() != null) {
+            template.set("role", role.getId());
+        }
+        return listRepositories(template);
+    }
+
+    /**
+     * Rewrites a query on repository names into a query on the full names, which are the only names Bitbucket lets
+     * us query by the repository slug. The owner part of the full name may differ in case from {@link #owner}, so
+     * exact names are looked up as a case insensitive "contains" of the slash and the name.
+     *
+     * @param names the query on the repository names.
+     * @return the query on the full names, accepting at least every repository the original query accepts.
+     */
+    @NonNull
+    private static BitbucketNameQuery onFullNames(@NonNull BitbucketNameQuery names) {
+        BitbucketNameQuery query = BitbucketNameQuery.all();
+        clauses:
+        for (List<BitbucketNameQuery.Term> clause : names.getClauses()) {
+            List<BitbucketNameQuery.Term> terms = new ArrayList<>(clause.size());
+            for (BitbucketNameQuery.Term term : clause) {
+                switch (term.getOperator()) {
+                    case EQUALS:
+                        terms.add(BitbucketNameQuery.Term.contains("/" + term.getValue()));
+                        break;
+                    case CONTAINS:
+                        terms.add(term);
+                        break;
+                    default:
+                        // cannot be rewritten without knowing the owner as Bitbucket spells it
+                        continue clauses;
+                }
             }
+            query = query.and(terms);
         }
+        return query;
     }
 
-    private CloseableHttpResponse executeMethod(HttpRequestBase httpMethod) throws InterruptedException, IOException {
-        RequestConfig.Builder requestConfig = RequestConfig.custom();
-        requestConfig.setConnectTimeout(10 * 1000);
-        requestConfig.setConnectionRequestTimeout(60 * 1000);
-        requestConfig.setSocketTimeout(60 * 1000);
-        httpMethod.setConfig(requestConfig.build());
+    private List<BitbucketCloudRepository> listRepositories(UriTemplate template)
+            throws IOException, InterruptedException {
+        List<BitbucketCloudRepository> repositories = new ArrayList<BitbucketCloudRepository>();
+        Integer pageNumber = 1;
+        String url, response;
+        PaginatedBitbucketRepository page;
+        do {
+            response = getRequest(url = template.set("page", pageNumber).expand());
+            try {
+                page = JsonParser.toJava(response, PaginatedBitbucketRepository.class);
+                repositories.addAll(page.getValues());
+            } catch (IOException e) {
+                throw new IOException("I/O error when parsing response from URL: " + url, e);
+            }
+            pageNumber++;
+        } while (page.getNext() != null);
+        Collections.sort(repositories, new Comparator<BitbucketCloudRepository>() {
+            @Override
+            public int compare(BitbucketCloudRepository o1, BitbucketCloudRepository o2) {
+                return o1.getRepositoryName().compareTo(o2.getRepositoryName());
+            }
+        });
+        return repositories;
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public List<BitbucketCloudRepository> getRepositoriesChangedSince(@CheckForNull UserRoleInRepository role,
+                                                                      long since)
+            throws IOException, InterruptedException {
+        UriTemplate template = UriTemplate.fromTemplate(V2_API_BASE_URL + "{/owner}{?role,sort,page,pagelen}")
+                .set("owner", owner)
+                .set("sort", "-updated_on")
+                .set("pagelen", 100);
+        if (role != null && getLogin() != null) {
+            template.set("role", role.getId());
+        }
+        List<BitbucketCloudRepository> repositories = new ArrayList<BitbucketCloudRepository>();
+        Integer pageNumber = 1;
+        String url, response;
+        PaginatedBitbucketRepository page;
+        do {
+            response = getRequest(url = template.set("page", pageNumber).expand());
+            try {
+                page = JsonParser.toJava(response, PaginatedBitbucketRepository.class);
+            } catch (IOException e) {
+                throw new IOException("I/O error when parsing response from URL: " + url, e);
+            }
+            for (BitbucketCloudRepository repository : page.getValues()) {
+                Date updatedOn = repository.getUpdatedOn();
+                if (updatedOn != null && updatedOn.getTime() < since) {
+                    // listed most recent first, everything after this one is older still
+                    return repositories;
+                }
+                repositories.add(repository);
+            }
+            pageNumber++;
+        } while (page.getNext() != null);
+        return repositories;
+    }
+
+    /**
+     * Returns the HTTP client shared by every client of Bitbucket Cloud, sized by the settings of the
+     * {@link BitbucketCloudEndpoint}.
+     */
+    private static BitbucketEndpointHttpClient getHttpClient() {
+        return BitbucketEndpointConfiguration.get().getHttpClient(BitbucketCloudEndpoint.SERVER_URL);
+    }
 
+    private CloseableHttpResponse executeMethod(HttpRequestBase httpMethod) throws InterruptedException, IOException {
+        BitbucketEndpointHttpClient httpClient = getHttpClient();
+        CloseableHttpClient client = httpClient.getClient();
+        HttpClientContext context = httpClient.newContext(credentials, API_HOST);
+        BitbucketRateLimiter rateLimiter = httpClient.getRateLimiter(credentials);
+        String lane = BitbucketRateLimiter.currentLane();
+        BitbucketResponseCache.Entry cached = httpClient.getResponseCache().prepare(credentials, httpMethod);
+        rateLimiter.acquire(lane);
         CloseableHttpResponse response = client.execute(API_HOST, httpMethod, context);
+        rateLimiter.update(response);
+        int attempt = 0;
         while (response.getStatusLine().getStatusCode() == API_RATE_LIMIT_CODE) {
+            long delay = rateLimiter.rateLimited(response, ++attempt);
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
             release(httpMethod);
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
+            if (attempt > BitbucketRateLimiter.MAX_RETRIES) {
+                throw new BitbucketRequestException(API_RATE_LIMIT_CODE,
+                        "Bitbucket Cloud API rate limit still exceeded after " + BitbucketRateLimiter.MAX_RETRIES
+                                + " retries for url: " + httpMethod.getURI());
             }
-            /*
-                TODO: When bitbucket starts supporting rate limit expiration time, remove 5 sec wait and put code
-                      to wait till expiration time is over. It should also fix the wait for ever loop.
-             */
-            LOGGER.fine("Bitbucket Cloud API rate limit reached, sleeping for 5 sec then retry...");
-            Thread.sleep(5000);
+            LOGGER.log(Level.FINE, "Bitbucket Cloud API rate limit reached, retrying in {0}ms", delay);
+            rateLimiter.acquire(lane);
             response = client.execute(API_HOST, httpMethod, context);
+            rateLimiter.update(response);
         }
-        return response;
+        return httpClient.getResponseCache().complete(credentials, httpMethod, cached, response);
     }
 
     /**
@@ -706,7 +909,7 @@ public class BitbucketCloudApiClient implements BitbucketApi {
                 throw new BitbucketRequestException(statusCode,
                         "HTTP request error. Status: " + statusCode + ": " + status + ".\n" + content);
             }
-            return new ClosingConnectionInputStream(response, httpget, connectionManager);
+            return new ClosingConnectionInputStream(response, httpget, getHttpClient().getConnectionManager());
         } catch (BitbucketRequestException | FileNotFoundException e) {
             throw e;
         } catch (IOException e) {
@@ -714,6 +917,32 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         }
     }
 
+    /**
+     * Requests the supplied path and decodes the JSON response straight from the connection. Concurrent identical
+     * requests (same credentials and path) share a single call and its decoded response.
+     *
+     * @param path the URL to request.
+     * @param type the type to decode.
+     * @param <T>  the type to decode.
+     * @return the decoded response, which must not be modified.
+     */
+    private <T> T getRequest(final String path, final TypeReference<T> type) throws IOException, InterruptedException {
+        return getHttpClient().getRequestCoalescer().execute(
+                BitbucketRequestCoalescer.keyOf(credentials, path),
+                new Callable<T>() {
+                    @Override
+                    public T call() throws IOException, InterruptedException {
+                        try (InputStream response = getRequestAsInputStream(path)) {
+                            try {
+                                return JsonParser.toJava(response, type);
+                            } catch (IOException e) {
+                                throw new IOException("I/O error when parsing response from URL: " + path, e);
+                            }
+                        }
+                    }
+                });
+    }
+
     private String getRequest(String path) throws IOException, InterruptedException {
         LOGGER.log(Level.WARNING, "Preparing request to URL: " + path);
 
@@ -781,7 +1010,7 @@ public class BitbucketCloudApiClient implements BitbucketApi {
 
     private void release(HttpRequestBase method) {
         method.releaseConnection();
-        connectionManager.closeExpiredConnections();
+        getHttpClient().getConnectionManager().closeExpiredConnections();
     }
 
     private String getResponseContent(CloseableHttpResponse response) throws IOException {
@@ -822,29 +1051,6 @@ public class BitbucketCloudApiClient implements BitbucketApi {
         return doRequest(httppost);
     }
 
-    private List<BitbucketCloudBranch> getAllBranches(String response) throws IOException, InterruptedException {
-        List<BitbucketCloudBranch> branches = new ArrayList<BitbucketCloudBranch>();
-        BitbucketCloudPage<BitbucketCloudBranch> page = JsonParser.mapper.readValue(response,
-                new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){});
-        branches.addAll(page.getValues());
-        while (!page.isLastPage()){
-            response = getRequest(page.getNext());
-            page = JsonParser.mapper.readValue(response,
-                    new TypeReference<BitbucketCloudPage<BitbucketCloudBranch>>(){});
-            branches.addAll(page.getValues());
-        }
-
-        // Filter the inactive branches out
-        List<BitbucketCloudBranch> activeBranches = new ArrayList<>();
-        for (BitbucketCloudBranch branch: branches) {
-            if (branch.isActive()) {
-                activeBranches.add(branch);
-            }
-        }
-
-        return activeBranches;
-    }
-
     public Iterable<SCMFile> getDirectoryContent(final BitbucketSCMFile parent) throws IOException, InterruptedException {
         String url = UriTemplate.fromTemplate(REPO_URL_TEMPLATE + "/src{/branchOrHash,path}")
                 .set("owner", owner)
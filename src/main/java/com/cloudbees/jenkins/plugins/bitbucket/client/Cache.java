@@ -23,91 +23,469 @@
  */
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.Timer;
 
+/**
+ * A bounded cache with time based expiry and least recently used eviction.
+ * <p>
+ * Values are loaded per key: the lock guarding the cache is never held while a value loads, so a slow load only
+ * delays the callers asking for that same key, who wait for (and share) the value being loaded. Optionally, the cache
+ * can be bounded by a total {@link Weigher weight} as well as by its number of entries, and expired values can be
+ * served for a grace period while they are reloaded in the background.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
 public class Cache<K, V> {
 
+    private static final Logger LOGGER = Logger.getLogger(Cache.class.getName());
+
     private static final int MAX_ENTRIES_DEFAULT = 100;
 
-    private final Map<K, Entry<V>> entries;
+    /**
+     * Computes the weight of a cached value.
+     *
+     * @param <K> the type of the keys.
+     * @param <V> the type of the values.
+     * @since 2.2.11
+     */
+    public interface Weigher<K, V> {
+        /**
+         * Returns the weight of a cached value.
+         *
+         * @param key   the key.
+         * @param value the value.
+         * @return the (non-negative) weight of the value.
+         */
+        int weigh(@NonNull K key, V value);
+    }
+
+    /**
+     * The entries in access order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
 
     private final long expireAfterNanos;
 
+    private final int maxEntries;
+
+    private final long maxWeight;
+
+    @CheckForNull
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * The total weight of the loaded entries. Guarded by {@code this}.
+     */
+    private long weight;
+
+    /**
+     * How long an expired value may still be served while it reloads in the background.
+     */
+    private volatile long staleWhileRevalidateNanos;
+
+    /**
+     * Whether reading a value restarts its expiry.
+     */
+    private volatile boolean expireAfterAccess;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong loadSuccesses = new AtomicLong();
+
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
     public Cache(final int duration, final TimeUnit unit) {
         this(duration, unit, MAX_ENTRIES_DEFAULT);
     }
 
     public Cache(final int duration, final TimeUnit unit, final int maxEntries) {
+        this(duration, unit, maxEntries, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructor for a cache bounded by weight as well as by number of entries.
+     *
+     * @param duration   how long a value stays valid once loaded.
+     * @param unit       the unit of {@code duration}.
+     * @param maxEntries the maximum number of entries.
+     * @param maxWeight  the maximum total weight of the entries.
+     * @param weigher    the weigher or {@code null} to only bound the number of entries.
+     * @since 2.2.11
+     */
+    public Cache(final int duration, final TimeUnit unit, final int maxEntries, final long maxWeight,
+                 @CheckForNull final Weigher<? super K, ? super V> weigher) {
         this.expireAfterNanos = unit.toNanos(duration);
-        this.entries = new LimitedMap<>(maxEntries);
+        this.maxEntries = maxEntries;
+        this.maxWeight = weigher == null ? Long.MAX_VALUE : maxWeight;
+        this.weigher = weigher;
     }
 
-    public synchronized V get(final K key, final Callable<V> callable) throws ExecutionException {
-        if (isExpired(key)) {
-            doRemove(key);
-        }
+    /**
+     * Lets expired values be served for a grace period while they are reloaded in the background, so that callers
+     * only wait for a load when a value is missing or too old.
+     *
+     * @param duration the grace period.
+     * @param unit     the unit of {@code duration}.
+     * @return this cache.
+     * @since 2.2.11
+     */
+    @NonNull
+    public Cache<K, V> staleWhileRevalidate(final int duration, final TimeUnit unit) {
+        this.staleWhileRevalidateNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Makes values expire once they have not been read for the configured duration, rather than once they have been
+     * loaded for that long.
+     *
+     * @return this cache.
+     * @since 2.2.11
+     */
+    @NonNull
+    public Cache<K, V> expireAfterAccess() {
+        this.expireAfterAccess = true;
+        return this;
+    }
 
-        if (entries.containsKey(key)) {
-            return entries.get(key).value;
+    public V get(final K key, final Callable<V> callable) throws ExecutionException {
+        Entry<V> entry;
+        boolean load = false;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.isLoaded()) {
+                long age = System.nanoTime() - entry.nanos;
+                if (age > expireAfterNanos + staleWhileRevalidateNanos) {
+                    doRemove(key);
+                    entry = null;
+                } else if (age > expireAfterNanos && !entry.refreshing) {
+                    entry.refreshing = true;
+                    refresh = true;
+                } else if (expireAfterAccess) {
+                    entry.nanos = System.nanoTime();
+                }
+            }
+            if (entry == null) {
+                entry = new Entry<>(new FutureTask<>(callable));
+                entries.put(key, entry);
+                evict();
+                load = true;
+            }
         }
+        if (load) {
+            misses.incrementAndGet();
+            load(key, entry);
+        } else {
+            hits.incrementAndGet();
+            if (refresh) {
+                refresh(key, entry, callable);
+            }
+        }
+        return entry.get(key);
+    }
 
-        V result;
+    /**
+     * Returns the value cached for the supplied key, without loading it.
+     *
+     * @param key the key.
+     * @return the cached value or {@code null} if there is no valid value cached for the key.
+     * @since 2.2.11
+     */
+    @CheckForNull
+    public V getIfPresent(final K key) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || !entry.isLoaded() || entry.isFailed()
+                    || System.nanoTime() - entry.nanos > expireAfterNanos + staleWhileRevalidateNanos) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (expireAfterAccess) {
+                entry.nanos = System.nanoTime();
+            }
+        }
+        hits.incrementAndGet();
         try {
-            result = callable.call();
-        } catch (final Exception e) {
-            throw new ExecutionException("Cannot load value for key: " + key, e);
+            return entry.get(key);
+        } catch (ExecutionException e) {
+            // cannot happen, the entry is loaded
+            return null;
         }
+    }
 
-        return doPut(key, result);
+    /**
+     * Caches a value, replacing the value cached for its key if any.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @since 2.2.11
+     */
+    public void put(final K key, final V value) {
+        Entry<V> entry = new Entry<>(new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() {
+                return value;
+            }
+        }));
+        entry.task.run();
+        synchronized (this) {
+            entry.nanos = System.nanoTime();
+            entry.weight = weigh(key, entry);
+            doRemove(key);
+            entries.put(key, entry);
+            weight += entry.weight;
+            evict();
+        }
     }
 
-    public void evictAll() {
+    public synchronized void evictAll() {
         entries.clear();
+        weight = 0;
     }
 
-    public int size() {
+    public synchronized int size() {
         return entries.size();
     }
 
-    private boolean isExpired(final K key) {
-        final Entry<V> entry = entries.get(key);
-        return entry != null && System.nanoTime() - entry.nanos > expireAfterNanos;
+    /**
+     * Returns the number of lookups served by a cached (or loading) value.
+     *
+     * @return the number of cache hits.
+     * @since 2.2.11
+     */
+    public long getHitCount() {
+        return hits.get();
     }
 
-    private void doRemove(final K key) {
-        entries.remove(key);
+    /**
+     * Returns the number of lookups that had to load their value.
+     *
+     * @return the number of cache misses.
+     * @since 2.2.11
+     */
+    public long getMissCount() {
+        return misses.get();
     }
 
-    private V doPut(final K key, final V value) {
-        entries.put(key, new Entry<V>(value));
-        return value;
+    /**
+     * Returns the number of values loaded, including background reloads.
+     *
+     * @return the number of successful loads.
+     * @since 2.2.11
+     */
+    public long getLoadSuccessCount() {
+        return loadSuccesses.get();
     }
 
-    private static class LimitedMap<K, V> extends LinkedHashMap<K, V> {
-        private final int maxEntries;
+    /**
+     * Returns the number of loads that failed, including background reloads.
+     *
+     * @return the number of failed loads.
+     * @since 2.2.11
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.get();
+    }
+
+    /**
+     * Returns the time spent loading values.
+     *
+     * @param unit the unit to return the time in.
+     * @return the time spent loading values.
+     * @since 2.2.11
+     */
+    public long getTotalLoadTime(final TimeUnit unit) {
+        return unit.convert(totalLoadNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of entries evicted to honour the bounds of this cache.
+     *
+     * @return the number of evictions.
+     * @since 2.2.11
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the total weight of the cached values.
+     *
+     * @return the total weight of the cached values, {@code 0} when the cache has no {@link Weigher}.
+     * @since 2.2.11
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    private void load(final K key, final Entry<V> entry) {
+        long start = System.nanoTime();
+        entry.task.run();
+        long end = System.nanoTime();
+        totalLoadNanos.addAndGet(end - start);
+        if (entry.isFailed()) {
+            loadFailures.incrementAndGet();
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    doRemove(key);
+                }
+            }
+            return;
+        }
+        loadSuccesses.incrementAndGet();
+        synchronized (this) {
+            entry.nanos = end;
+            if (entries.get(key) == entry) {
+                entry.weight = weigh(key, entry);
+                weight += entry.weight;
+                evict();
+            }
+        }
+    }
+
+    private void refresh(final K key, final Entry<V> stale, final Callable<V> callable) {
+        final Entry<V> fresh = new Entry<>(new FutureTask<>(callable));
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                fresh.task.run();
+                long end = System.nanoTime();
+                totalLoadNanos.addAndGet(end - start);
+                if (fresh.isFailed()) {
+                    loadFailures.incrementAndGet();
+                    LOGGER.log(Level.FINE, "Could not reload value for key: " + key, fresh.failure());
+                    synchronized (Cache.this) {
+                        stale.refreshing = false;
+                    }
+                    return;
+                }
+                loadSuccesses.incrementAndGet();
+                synchronized (Cache.this) {
+                    fresh.nanos = end;
+                    if (entries.get(key) == stale) {
+                        weight -= stale.weight;
+                        fresh.weight = weigh(key, fresh);
+                        weight += fresh.weight;
+                        entries.put(key, fresh);
+                        evict();
+                    }
+                }
+            }
+        });
+    }
+
+    private int weigh(final K key, final Entry<V> entry) {
+        if (weigher == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, weigher.weigh(key, entry.task.get()));
+        } catch (InterruptedException | ExecutionException e) {
+            // cannot happen, the entry is loaded
+            return 0;
+        }
+    }
 
-        public LimitedMap(final int maxEntries) {
-            this.maxEntries = maxEntries;
+    /**
+     * Evicts the least recently used entries until the cache is within its bounds. Must hold {@code this}.
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+            Entry<V> eldest = iterator.next().getValue();
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions.incrementAndGet();
         }
+    }
 
-        @Override
-        protected boolean removeEldestEntry(final java.util.Map.Entry<K, V> eldest) {
-            return size() > maxEntries;
+    /**
+     * Removes an entry. Must hold {@code this}.
+     */
+    private void doRemove(final K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
         }
     }
 
     private static class Entry<V> {
-        private final V value;
+        private final FutureTask<V> task;
+
+        /**
+         * When the value was loaded, or last read if the cache expires after access. Guarded by the cache.
+         */
+        private long nanos;
+
+        /**
+         * The weight accounted for this entry. Guarded by the cache.
+         */
+        private int weight;
+
+        /**
+         * Whether a background reload is in progress. Guarded by the cache.
+         */
+        private boolean refreshing;
 
-        private final long nanos;
+        Entry(final FutureTask<V> task) {
+            this.task = task;
+        }
+
+        boolean isLoaded() {
+            return task.isDone();
+        }
+
+        boolean isFailed() {
+            return failure() != null;
+        }
+
+        @CheckForNull
+        Throwable failure() {
+            if (!task.isDone()) {
+                return null;
+            }
+            try {
+                task.get();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return e;
+            }
+        }
 
-        public Entry(final V value) {
-            this.value = value;
-            nanos = System.nanoTime();
+        V get(final Object key) throws ExecutionException {
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                throw new ExecutionException("Cannot load value for key: " + key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException("Interrupted while loading value for key: " + key, e);
+            }
         }
     }
 
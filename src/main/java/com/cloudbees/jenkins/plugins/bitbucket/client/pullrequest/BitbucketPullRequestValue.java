@@ -37,6 +37,11 @@ public class BitbucketPullRequestValue implements BitbucketPullRequest {
 
     private Author author;
 
+    /**
+     * The state of the pull request: {@code OPEN}, {@code MERGED}, {@code DECLINED} or {@code SUPERSEDED}.
+     */
+    private String state;
+
     public BitbucketPullRequestValueRepository getSource() {
         return source;
     }
@@ -89,6 +94,14 @@ public class BitbucketPullRequestValue implements BitbucketPullRequest {
         this.author = author;
     }
 
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
     public String getAuthorDisplayName() {
         return author.displayName;
     }
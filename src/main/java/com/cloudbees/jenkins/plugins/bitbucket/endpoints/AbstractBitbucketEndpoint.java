@@ -33,6 +33,10 @@ import hudson.model.AbstractDescribableImpl;
 import hudson.security.ACL;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.pool.PoolStats;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * Represents a {@link BitbucketCloudEndpoint} or a {@link BitbucketServerEndpoint}.
@@ -41,6 +45,35 @@ import org.apache.commons.lang.StringUtils;
  */
 public abstract class AbstractBitbucketEndpoint extends AbstractDescribableImpl<AbstractBitbucketEndpoint> {
 
+    /**
+     * The default maximum number of pooled HTTP connections to this end-point.
+     *
+     * @since 2.2.11
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 22;
+
+    /**
+     * The default maximum number of pooled HTTP connections per route to this end-point.
+     *
+     * @since 2.2.11
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * The default number of seconds a pooled HTTP connection to this end-point may stay idle before it is evicted.
+     *
+     * @since 2.2.11
+     */
+    public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 60;
+
+    /**
+     * The default maximum number of repositories of organization folders processed concurrently against this
+     * end-point.
+     *
+     * @since 2.2.11
+     */
+    public static final int DEFAULT_SOURCE_SCAN_CONCURRENCY = 1;
+
     /**
      * {@code true} if and only if Jenkins is supposed to auto-manage hooks for this end-point.
      */
@@ -52,6 +85,27 @@ public abstract class AbstractBitbucketEndpoint extends AbstractDescribableImpl<
     @CheckForNull
     private final String credentialsId;
 
+    /**
+     * The maximum number of pooled HTTP connections to this end-point, {@code 0} means the default.
+     */
+    private int maxConnections;
+
+    /**
+     * The maximum number of pooled HTTP connections per route to this end-point, {@code 0} means the default.
+     */
+    private int maxConnectionsPerRoute;
+
+    /**
+     * The number of seconds a pooled HTTP connection may stay idle before it is evicted, {@code 0} means the default.
+     */
+    private int connectionIdleTimeout;
+
+    /**
+     * The maximum number of repositories of organization folders processed concurrently against this end-point,
+     * {@code 0} means the default.
+     */
+    private int sourceScanConcurrency;
+
     /**
      * Constructor.
      *
@@ -111,6 +165,107 @@ public abstract class AbstractBitbucketEndpoint extends AbstractDescribableImpl<
         return credentialsId;
     }
 
+    /**
+     * Returns the maximum number of pooled HTTP connections to this end-point.
+     *
+     * @return the maximum number of pooled HTTP connections to this end-point.
+     * @since 2.2.11
+     */
+    public final int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+    }
+
+    /**
+     * Sets the maximum number of pooled HTTP connections to this end-point.
+     *
+     * @param maxConnections the maximum number of pooled HTTP connections, {@code 0} to use the default.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public final void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(0, maxConnections);
+    }
+
+    /**
+     * Returns the maximum number of pooled HTTP connections per route to this end-point.
+     *
+     * @return the maximum number of pooled HTTP connections per route to this end-point.
+     * @since 2.2.11
+     */
+    public final int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute : DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    }
+
+    /**
+     * Sets the maximum number of pooled HTTP connections per route to this end-point.
+     *
+     * @param maxConnectionsPerRoute the maximum number of pooled HTTP connections per route, {@code 0} to use the
+     *                               default.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public final void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = Math.max(0, maxConnectionsPerRoute);
+    }
+
+    /**
+     * Returns the number of seconds a pooled HTTP connection to this end-point may stay idle before it is evicted.
+     *
+     * @return the idle timeout in seconds.
+     * @since 2.2.11
+     */
+    public final int getConnectionIdleTimeout() {
+        return connectionIdleTimeout > 0 ? connectionIdleTimeout : DEFAULT_CONNECTION_IDLE_TIMEOUT;
+    }
+
+    /**
+     * Sets the number of seconds a pooled HTTP connection to this end-point may stay idle before it is evicted.
+     *
+     * @param connectionIdleTimeout the idle timeout in seconds, {@code 0} to use the default.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public final void setConnectionIdleTimeout(int connectionIdleTimeout) {
+        this.connectionIdleTimeout = Math.max(0, connectionIdleTimeout);
+    }
+
+    /**
+     * Returns the maximum number of repositories of organization folders processed concurrently against this
+     * end-point.
+     *
+     * @return the maximum number of repositories processed concurrently.
+     * @since 2.2.11
+     */
+    public final int getSourceScanConcurrency() {
+        return sourceScanConcurrency > 0 ? sourceScanConcurrency : DEFAULT_SOURCE_SCAN_CONCURRENCY;
+    }
+
+    /**
+     * Sets the maximum number of repositories of organization folders processed concurrently against this end-point.
+     *
+     * @param sourceScanConcurrency the maximum number of repositories processed concurrently, {@code 0} to use the
+     *                              default.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public final void setSourceScanConcurrency(int sourceScanConcurrency) {
+        this.sourceScanConcurrency = Math.max(0, sourceScanConcurrency);
+    }
+
+    /**
+     * Returns a snapshot of the leased, available and pending connections of the HTTP connection pool of this
+     * end-point.
+     *
+     * @return the connection pool statistics or {@code null} if no connection was opened to this end-point yet.
+     * @since 2.2.11
+     */
+    @Restricted(NoExternalUse.class) // only for plugin internal use.
+    @CheckForNull
+    public PoolStats getConnectionPoolStats() {
+        BitbucketEndpointHttpClient client = BitbucketEndpointConfiguration.get().getExistingHttpClient(getServerUrl());
+        return client == null ? null : client.getPoolStats();
+    }
+
     /**
      * Looks up the {@link StandardUsernamePasswordCredentials} to use for auto-management of hooks.
      *
@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.client.Cache;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.http.auth.Credentials;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * What the API clients learned about the commits of an endpoint: the commits themselves, whether paths exist at them
+ * and the full hashes of the abbreviated hashes reported by pull request listings. None of it changes once a commit
+ * is created, so entries never expire and are only evicted when a cache is full.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketCommitCache {
+
+    /**
+     * The number of commits kept by {@link #cacheCommit(Credentials, String, String, String, BitbucketCommit)}.
+     */
+    private static final int MAX_CACHED_COMMITS = Integer.getInteger(
+            BitbucketCommitCache.class.getName() + ".maxCachedCommits", 10000);
+
+    /**
+     * The number of path probes kept by {@link #cachePathExists(Credentials, String, String, String, String, boolean)}.
+     */
+    private static final int MAX_CACHED_PATHS = Integer.getInteger(
+            BitbucketCommitCache.class.getName() + ".maxCachedPaths", 50000);
+
+    /**
+     * The number of pull request hashes kept by
+     * {@link #cachePullRequestHash(Credentials, String, String, String, String, String)}.
+     */
+    private static final int MAX_CACHED_PULL_REQUEST_HASHES = Integer.getInteger(
+            BitbucketCommitCache.class.getName() + ".maxCachedPullRequestHashes", 10000);
+
+    /**
+     * Matches a full SHA-1 commit hash.
+     */
+    private static final Pattern FULL_HASH = Pattern.compile("[0-9a-fA-F]{40}");
+
+    /**
+     * The commits resolved from this endpoint.
+     */
+    private final Cache<String, BitbucketCommit> commitCache =
+            new Cache<>(Integer.MAX_VALUE, TimeUnit.DAYS, MAX_CACHED_COMMITS);
+
+    /**
+     * Whether a path exists at a commit of this endpoint.
+     */
+    private final Cache<String, Boolean> pathCache =
+            new Cache<>(Integer.MAX_VALUE, TimeUnit.DAYS, MAX_CACHED_PATHS);
+
+    /**
+     * The full hashes of the abbreviated source hashes reported by the pull request listings of this endpoint.
+     */
+    private final Cache<String, String> pullRequestHashCache =
+            new Cache<>(Integer.MAX_VALUE, TimeUnit.DAYS, MAX_CACHED_PULL_REQUEST_HASHES);
+
+    /**
+     * Returns a commit previously resolved from this endpoint.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param hash        the commit hash, only full hashes are cached as anything else may resolve differently later.
+     * @return the cached commit or {@code null}.
+     */
+    @CheckForNull
+    public BitbucketCommit getCachedCommit(@CheckForNull Credentials credentials, @NonNull String owner,
+                                           @NonNull String repository, @NonNull String hash) {
+        return FULL_HASH.matcher(hash).matches()
+                ? commitCache.getIfPresent(commitKey(credentials, owner, repository, hash))
+                : null;
+    }
+
+    /**
+     * Caches a commit resolved from this endpoint.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param hash        the commit hash, only full hashes are cached as anything else may resolve differently later.
+     * @param commit      the commit.
+     */
+    public void cacheCommit(@CheckForNull Credentials credentials, @NonNull String owner, @NonNull String repository,
+                            @NonNull String hash, @NonNull BitbucketCommit commit) {
+        if (FULL_HASH.matcher(hash).matches()) {
+            commitCache.put(commitKey(credentials, owner, repository, hash), commit);
+        }
+    }
+
+    /**
+     * Returns whether a path was found at a commit of this endpoint when last probed. Both outcomes are cached.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param hash        the commit hash, only full hashes are cached as anything else may resolve differently later.
+     * @param path        the path.
+     * @return whether the path exists or {@code null} if unknown.
+     */
+    @CheckForNull
+    public Boolean getCachedPathExists(@CheckForNull Credentials credentials, @NonNull String owner,
+                                       @NonNull String repository, @NonNull String hash, @NonNull String path) {
+        return FULL_HASH.matcher(hash).matches()
+                ? pathCache.getIfPresent(commitKey(credentials, owner, repository, hash) + ':' + path)
+                : null;
+    }
+
+    /**
+     * Caches whether a path exists at a commit of this endpoint.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param hash        the commit hash, only full hashes are cached as anything else may resolve differently later.
+     * @param path        the path.
+     * @param exists      whether the path exists.
+     */
+    public void cachePathExists(@CheckForNull Credentials credentials, @NonNull String owner,
+                                @NonNull String repository, @NonNull String hash, @NonNull String path,
+                                boolean exists) {
+        if (FULL_HASH.matcher(hash).matches()) {
+            pathCache.put(commitKey(credentials, owner, repository, hash) + ':' + path, exists);
+        }
+    }
+
+    /**
+     * Returns the full hash previously resolved for the abbreviated source hash of a pull request.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param id          the pull request id.
+     * @param shortHash   the abbreviated hash reported for the source of the pull request.
+     * @return the full hash or {@code null} if unknown.
+     */
+    @CheckForNull
+    public String getCachedPullRequestHash(@CheckForNull Credentials credentials, @NonNull String owner,
+                                           @NonNull String repository, @NonNull String id,
+                                           @NonNull String shortHash) {
+        return pullRequestHashCache.getIfPresent(commitKey(credentials, owner, repository, shortHash) + '#' + id);
+    }
+
+    /**
+     * Caches the full hash resolved for the abbreviated source hash of a pull request.
+     *
+     * @param credentials the (optional) credentials the answer was fetched with.
+     * @param owner       the repository owner.
+     * @param repository  the repository name.
+     * @param id          the pull request id.
+     * @param shortHash   the abbreviated hash reported for the source of the pull request.
+     * @param fullHash    the full hash, ignored unless it is a full hash starting with the abbreviated one.
+     */
+    public void cachePullRequestHash(@CheckForNull Credentials credentials, @NonNull String owner,
+                                     @NonNull String repository, @NonNull String id, @NonNull String shortHash,
+                                     @NonNull String fullHash) {
+        if (FULL_HASH.matcher(fullHash).matches()
+                && fullHash.toLowerCase(Locale.ENGLISH).startsWith(shortHash.toLowerCase(Locale.ENGLISH))) {
+            pullRequestHashCache.put(commitKey(credentials, owner, repository, shortHash) + '#' + id, fullHash);
+        }
+    }
+
+    /**
+     * Evicts everything.
+     */
+    public void clear() {
+        commitCache.evictAll();
+        pathCache.evictAll();
+        pullRequestHashCache.evictAll();
+    }
+
+    /**
+     * Builds the key of what was learned about a commit. The key includes the user, as what a repository shows may
+     * depend on who asks.
+     */
+    private static String commitKey(@CheckForNull Credentials credentials, String owner, String repository,
+                                    String hash) {
+        String user = credentials == null || credentials.getUserPrincipal() == null
+                ? ""
+                : credentials.getUserPrincipal().getName();
+        return user + '\n' + owner.toLowerCase(Locale.ENGLISH) + '/' + repository.toLowerCase(Locale.ENGLISH) + '@'
+                + hash.toLowerCase(Locale.ENGLISH);
+    }
+
+}
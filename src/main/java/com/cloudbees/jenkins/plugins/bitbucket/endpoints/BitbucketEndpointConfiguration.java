@@ -33,13 +33,21 @@ import hudson.util.ListBoxModel;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -56,12 +64,44 @@ import org.kohsuke.stapler.StaplerRequest;
 @Extension
 public class BitbucketEndpointConfiguration extends GlobalConfiguration {
 
+    private static final Logger LOGGER = Logger.getLogger(BitbucketEndpointConfiguration.class.getName());
+
+    /**
+     * How long, in minutes, the shared HTTP client of a server URL that is not configured as an endpoint is kept
+     * once it is no longer used.
+     */
+    private static final int UNCONFIGURED_HTTP_CLIENT_IDLE_MINUTES = Integer.getInteger(
+            BitbucketEndpointConfiguration.class.getName() + ".unconfiguredHttpClientIdleMinutes", 30);
+
+    /**
+     * How long, in seconds, the shared HTTP client of a removed endpoint must have been unused before it is closed.
+     */
+    private static final int RETIRED_HTTP_CLIENT_GRACE_SECONDS = 60;
+
+    /**
+     * How long, in minutes, the shared HTTP client of a removed endpoint is kept at most for its requests in flight.
+     */
+    private static final int RETIRED_HTTP_CLIENT_MAX_MINUTES = 10;
+
     /**
      * The list of {@link AbstractBitbucketEndpoint}, this is subject to the constraint that there can only ever be
      * one entry for each {@link AbstractBitbucketEndpoint#getServerUrl()}.
      */
     private List<AbstractBitbucketEndpoint> endpoints;
 
+    /**
+     * The shared HTTP clients keyed by {@link AbstractBitbucketEndpoint#getServerUrl()}.
+     */
+    private final transient ConcurrentMap<String, BitbucketEndpointHttpClient> httpClients =
+            new ConcurrentHashMap<String, BitbucketEndpointHttpClient>();
+
+    /**
+     * The shared HTTP clients of removed endpoints, waiting for their requests in flight to complete before they are
+     * closed.
+     */
+    private final transient Map<BitbucketEndpointHttpClient, Long> retiredHttpClients =
+            new HashMap<BitbucketEndpointHttpClient, Long>();
+
     /**
      * Constructor.
      */
@@ -155,6 +195,10 @@ public class BitbucketEndpointConfiguration extends GlobalConfiguration {
      */
     public synchronized void setEndpoints(@CheckForNull List<? extends AbstractBitbucketEndpoint> endpoints) {
         Jenkins.getActiveInstance().checkPermission(Jenkins.ADMINISTER);
+        Set<String> previousServerUrls = new HashSet<String>();
+        for (AbstractBitbucketEndpoint endpoint : getEndpoints()) {
+            previousServerUrls.add(endpoint.getServerUrl());
+        }
         List<AbstractBitbucketEndpoint> eps = new ArrayList<>(Util.fixNull(endpoints));
         // remove duplicates and empty urls
         Set<String> serverUrls = new HashSet<String>();
@@ -167,7 +211,13 @@ public class BitbucketEndpointConfiguration extends GlobalConfiguration {
             } else if (!(endpoint instanceof BitbucketCloudEndpoint)
                     && BitbucketCloudEndpoint.SERVER_URL.equals(serverUrl)) {
                 // fix type for the special case
-                iterator.set(new BitbucketCloudEndpoint(endpoint.isManageHooks(), endpoint.getCredentialsId()));
+                BitbucketCloudEndpoint cloudEndpoint =
+                        new BitbucketCloudEndpoint(endpoint.isManageHooks(), endpoint.getCredentialsId());
+                cloudEndpoint.setMaxConnections(endpoint.getMaxConnections());
+                cloudEndpoint.setMaxConnectionsPerRoute(endpoint.getMaxConnectionsPerRoute());
+                cloudEndpoint.setConnectionIdleTimeout(endpoint.getConnectionIdleTimeout());
+                cloudEndpoint.setSourceScanConcurrency(endpoint.getSourceScanConcurrency());
+                iterator.set(cloudEndpoint);
             }
             serverUrls.add(serverUrl);
         }
@@ -176,6 +226,14 @@ public class BitbucketEndpointConfiguration extends GlobalConfiguration {
         }
         this.endpoints = eps;
         save();
+        previousServerUrls.removeAll(serverUrls);
+        closeHttpClients(previousServerUrls);
+        for (AbstractBitbucketEndpoint endpoint : eps) {
+            BitbucketEndpointHttpClient client = httpClients.get(endpoint.getServerUrl());
+            if (client != null) {
+                client.configure(endpoint);
+            }
+        }
     }
 
     /**
@@ -265,6 +323,104 @@ public class BitbucketEndpointConfiguration extends GlobalConfiguration {
         return null;
     }
 
+    /**
+     * Returns the shared HTTP client for the supplied server URL, creating it on first use. The client is reused by
+     * every API client talking to that server. It is closed once its requests in flight have completed after the
+     * corresponding endpoint is removed, or after it has been unused for a while if the server URL is not configured
+     * as an endpoint.
+     *
+     * @param serverUrl the server URL.
+     * @return the shared HTTP client.
+     */
+    @Restricted(NoExternalUse.class)
+    @NonNull
+    public BitbucketEndpointHttpClient getHttpClient(@CheckForNull String serverUrl) {
+        serverUrl = normalizeServerUrl(serverUrl);
+        BitbucketEndpointHttpClient client = httpClients.get(serverUrl);
+        if (client == null) {
+            AbstractBitbucketEndpoint endpoint = findEndpoint(serverUrl);
+            synchronized (httpClients) {
+                client = httpClients.get(serverUrl);
+                if (client == null) {
+                    client = new BitbucketEndpointHttpClient(serverUrl, endpoint);
+                    httpClients.put(serverUrl, client);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Returns the shared HTTP client for the supplied server URL if one has been created.
+     *
+     * @param serverUrl the server URL.
+     * @return the shared HTTP client or {@code null} if no request has been made to that server yet.
+     */
+    @Restricted(NoExternalUse.class)
+    @CheckForNull
+    public BitbucketEndpointHttpClient getExistingHttpClient(@CheckForNull String serverUrl) {
+        return httpClients.get(normalizeServerUrl(serverUrl));
+    }
+
+    /**
+     * Returns the shared HTTP clients created so far.
+     *
+     * @return the shared HTTP clients.
+     */
+    @NonNull
+    Collection<BitbucketEndpointHttpClient> getHttpClients() {
+        return Collections.unmodifiableCollection(httpClients.values());
+    }
+
+    /**
+     * Forgets the shared HTTP clients of endpoints that are no longer configured. They are closed by
+     * {@link #evictHttpClients()} once their requests in flight have completed.
+     *
+     * @param serverUrls the server URLs of the removed endpoints.
+     */
+    private void closeHttpClients(@NonNull Set<String> serverUrls) {
+        for (String serverUrl : serverUrls) {
+            BitbucketEndpointHttpClient client = httpClients.remove(serverUrl);
+            if (client != null) {
+                synchronized (retiredHttpClients) {
+                    retiredHttpClients.put(client, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the shared HTTP clients of removed endpoints that no longer have requests in flight, or that have been
+     * removed for longer than any request may take, together with the shared HTTP clients of server URLs that are not
+     * configured as endpoints and have not been used for {@link #UNCONFIGURED_HTTP_CLIENT_IDLE_MINUTES}.
+     */
+    void evictHttpClients() {
+        long now = System.currentTimeMillis();
+        List<BitbucketEndpointHttpClient> closing = new ArrayList<>();
+        synchronized (retiredHttpClients) {
+            for (Iterator<Map.Entry<BitbucketEndpointHttpClient, Long>> iterator =
+                 retiredHttpClients.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<BitbucketEndpointHttpClient, Long> entry = iterator.next();
+                if (entry.getKey().isUnused(TimeUnit.SECONDS.toMillis(RETIRED_HTTP_CLIENT_GRACE_SECONDS))
+                        || now - entry.getValue() >= TimeUnit.MINUTES.toMillis(RETIRED_HTTP_CLIENT_MAX_MINUTES)) {
+                    iterator.remove();
+                    closing.add(entry.getKey());
+                }
+            }
+        }
+        long idleMillis = TimeUnit.MINUTES.toMillis(UNCONFIGURED_HTTP_CLIENT_IDLE_MINUTES);
+        for (Map.Entry<String, BitbucketEndpointHttpClient> entry : httpClients.entrySet()) {
+            if (entry.getValue().isUnused(idleMillis) && findEndpoint(entry.getKey()) == null
+                    && httpClients.remove(entry.getKey(), entry.getValue())) {
+                closing.add(entry.getValue());
+            }
+        }
+        for (BitbucketEndpointHttpClient client : closing) {
+            LOGGER.log(Level.FINE, "Closing HTTP client for {0}", client.getServerUrl());
+            client.close();
+        }
+    }
+
     /**
      * Fix a serverUrl.
      *
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The executors sharing the concurrent work against an endpoint between every job and folder, sized by the endpoint
+ * settings: the page requests of parallel listings and the repositories of organization folders.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketEndpointExecutors {
+
+    /**
+     * The {@link AbstractBitbucketEndpoint#getServerUrl()} the executors work against.
+     */
+    @NonNull
+    private final String serverUrl;
+
+    /**
+     * The maximum number of page requests in flight to this endpoint, {@code 1} when pages are fetched sequentially.
+     */
+    private volatile int pageRequestConcurrency = 1;
+
+    /**
+     * The maximum number of repositories processed concurrently against this endpoint.
+     */
+    private volatile int sourceScanConcurrency = AbstractBitbucketEndpoint.DEFAULT_SOURCE_SCAN_CONCURRENCY;
+
+    /**
+     * The executor running concurrent page requests, created on first use. Guarded by {@code this}.
+     */
+    @CheckForNull
+    private ThreadPoolExecutor pageRequestExecutor;
+
+    /**
+     * The executor processing the repositories of organization folders, created on first use. Guarded by
+     * {@code this}.
+     */
+    @CheckForNull
+    private ThreadPoolExecutor sourceScanExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param serverUrl the {@link AbstractBitbucketEndpoint#getServerUrl()}.
+     */
+    BitbucketEndpointExecutors(@NonNull String serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Applies the settings of the supplied endpoint. The executors are resized in place so that the work in flight
+     * is not disturbed.
+     *
+     * @param endpoint the endpoint.
+     */
+    void configure(@NonNull AbstractBitbucketEndpoint endpoint) {
+        int concurrency = 1;
+        if (endpoint instanceof BitbucketServerEndpoint && ((BitbucketServerEndpoint) endpoint).isParallelPaging()) {
+            concurrency = ((BitbucketServerEndpoint) endpoint).getMaxParallelPageRequests();
+        }
+        this.pageRequestConcurrency = concurrency;
+        this.sourceScanConcurrency = endpoint.getSourceScanConcurrency();
+        synchronized (this) {
+            resize(pageRequestExecutor, pageRequestConcurrency);
+            resize(sourceScanExecutor, sourceScanConcurrency);
+        }
+    }
+
+    private static void resize(@CheckForNull ThreadPoolExecutor executor, int size) {
+        if (executor == null || executor.getMaximumPoolSize() == size) {
+            return;
+        }
+        // the core size may never exceed the maximum size
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Returns the maximum number of page requests that may be in flight to this endpoint.
+     *
+     * @return the maximum number of concurrent page requests, {@code 1} when pages must be fetched sequentially.
+     */
+    public int getPageRequestConcurrency() {
+        return pageRequestConcurrency;
+    }
+
+    /**
+     * Returns the executor running the concurrent page requests to this endpoint. Its pool size is
+     * {@link #getPageRequestConcurrency()}, which caps the number of page requests in flight across all listings.
+     *
+     * @return the executor.
+     */
+    @NonNull
+    public synchronized ExecutorService getPageRequestExecutor() {
+        if (pageRequestExecutor == null) {
+            pageRequestExecutor = newExecutor(pageRequestConcurrency, "Bitbucket page requests " + serverUrl);
+        }
+        return pageRequestExecutor;
+    }
+
+    /**
+     * Returns the maximum number of repositories of organization folders that may be processed concurrently against
+     * this endpoint.
+     *
+     * @return the maximum number of repositories processed concurrently, {@code 1} when they must be processed
+     * sequentially.
+     */
+    public int getSourceScanConcurrency() {
+        return sourceScanConcurrency;
+    }
+
+    /**
+     * Returns the executor processing the repositories of organization folders against this endpoint. Its pool size
+     * is {@link #getSourceScanConcurrency()}, which caps the number of repositories processed across all folders.
+     *
+     * @return the executor.
+     */
+    @NonNull
+    public synchronized ExecutorService getSourceScanExecutor() {
+        if (sourceScanExecutor == null) {
+            sourceScanExecutor = newExecutor(sourceScanConcurrency, "Bitbucket repository scans " + serverUrl);
+        }
+        return sourceScanExecutor;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int size, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stops the executors, interrupting the work in flight.
+     */
+    synchronized void shutdown() {
+        if (pageRequestExecutor != null) {
+            pageRequestExecutor.shutdownNow();
+        }
+        if (sourceScanExecutor != null) {
+            sourceScanExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ProxyConfiguration;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A long-lived HTTP client, backed by a connection pool with keep-alive, that is shared by every API client talking
+ * to the same {@link AbstractBitbucketEndpoint}. Instances are registered with (and owned by)
+ * {@link BitbucketEndpointConfiguration}, which closes them once unused when their endpoint is removed. The pool is
+ * sized by the endpoint settings and its idle connections are evicted by {@link BitbucketEndpointHttpClientMonitor}.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketEndpointHttpClient implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketEndpointHttpClient.class.getName());
+
+    /**
+     * The {@link AbstractBitbucketEndpoint#getServerUrl()} this client is bound to.
+     */
+    @NonNull
+    private final String serverUrl;
+
+    /**
+     * The connection pool.
+     */
+    @NonNull
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * The client.
+     */
+    @NonNull
+    private final CloseableHttpClient client;
+
+    /**
+     * The configuration of the requests that do not go through a proxy.
+     */
+    @NonNull
+    private final RequestConfig requestConfig;
+
+    /**
+     * When {@link #newContext(Credentials, HttpHost)} was last called.
+     */
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * The rate limiters keyed by user name, Bitbucket applies its rate limits per user.
+     */
+    private final ConcurrentMap<String, BitbucketRateLimiter> rateLimiters =
+            new ConcurrentHashMap<String, BitbucketRateLimiter>();
+
+    /**
+     * The validators and bodies of the responses received from this endpoint.
+     */
+    private final BitbucketResponseCache responseCache = new BitbucketResponseCache();
+
+    /**
+     * The identical requests to this endpoint that are in flight.
+     */
+    private final BitbucketRequestCoalescer requestCoalescer = new BitbucketRequestCoalescer();
+
+    /**
+     * The commits, path probes and pull request hashes resolved from this endpoint.
+     */
+    private final BitbucketCommitCache commitCache = new BitbucketCommitCache();
+
+    /**
+     * The number of seconds a pooled connection may stay idle before {@link #evictConnections()} closes it.
+     */
+    private volatile int idleTimeout = AbstractBitbucketEndpoint.DEFAULT_CONNECTION_IDLE_TIMEOUT;
+
+    /**
+     * The executors sharing the concurrent work against this endpoint.
+     */
+    @NonNull
+    private final BitbucketEndpointExecutors executors;
+
+    /**
+     * Constructor.
+     *
+     * @param serverUrl the {@link AbstractBitbucketEndpoint#getServerUrl()}.
+     * @param endpoint  the endpoint providing the pool settings or {@code null} to use the defaults.
+     */
+    BitbucketEndpointHttpClient(@NonNull String serverUrl, @CheckForNull AbstractBitbucketEndpoint endpoint) {
+        this.serverUrl = serverUrl;
+        this.executors = new BitbucketEndpointExecutors(serverUrl);
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(AbstractBitbucketEndpoint.DEFAULT_MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(AbstractBitbucketEndpoint.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        if (endpoint != null) {
+            configure(endpoint);
+        }
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(60 * 1000).build());
+
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(10 * 1000)
+                .setConnectionRequestTimeout(60 * 1000)
+                .setSocketTimeout(60 * 1000)
+                .build();
+        // the proxy is not set on the client, it is looked up for each request so that changes apply immediately
+        this.client = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * Returns the {@link AbstractBitbucketEndpoint#getServerUrl()} this client is bound to.
+     *
+     * @return the server URL.
+     */
+    @NonNull
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    /**
+     * Returns the shared client. Callers must not close it.
+     *
+     * @return the shared client.
+     */
+    @NonNull
+    public CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the connection pool backing {@link #getClient()}.
+     *
+     * @return the connection pool.
+     */
+    @NonNull
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Applies the pool settings of the supplied endpoint. The pool is resized in place so that requests in flight are
+     * not disturbed.
+     *
+     * @param endpoint the endpoint.
+     */
+    void configure(@NonNull AbstractBitbucketEndpoint endpoint) {
+        int maxTotal = endpoint.getMaxConnections();
+        int maxPerRoute = Math.min(endpoint.getMaxConnectionsPerRoute(), maxTotal);
+        if (connectionManager.getMaxTotal() != maxTotal
+                || connectionManager.getDefaultMaxPerRoute() != maxPerRoute) {
+            LOGGER.log(Level.FINE, "Connection pool for {0} resized to {1} connections ({2} per route)",
+                    new Object[]{serverUrl, maxTotal, maxPerRoute});
+            connectionManager.setMaxTotal(maxTotal);
+            connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        }
+        this.idleTimeout = endpoint.getConnectionIdleTimeout();
+        executors.configure(endpoint);
+    }
+
+    /**
+     * Returns the executors sharing the concurrent work against this endpoint.
+     *
+     * @return the executors.
+     */
+    @NonNull
+    public BitbucketEndpointExecutors getExecutors() {
+        return executors;
+    }
+
+    /**
+     * Returns the cache of the commits, path probes and pull request hashes resolved from this endpoint.
+     *
+     * @return the commit cache.
+     */
+    @NonNull
+    public BitbucketCommitCache getCommitCache() {
+        return commitCache;
+    }
+
+    /**
+     * Returns a snapshot of the connection pool usage.
+     *
+     * @return the number of leased, available and pending connections together with the pool limit.
+     */
+    @NonNull
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Returns whether this client has not been used for a while and has no request in flight.
+     *
+     * @param idleMillis how long, in milliseconds, the client must not have been used for.
+     * @return {@code true} if this client may be closed without disturbing any request.
+     */
+    boolean isUnused(long idleMillis) {
+        PoolStats stats = connectionManager.getTotalStats();
+        return stats.getLeased() == 0 && stats.getPending() == 0
+                && System.currentTimeMillis() - lastUsed >= idleMillis;
+    }
+
+    /**
+     * Closes the pooled connections that have expired or have been idle for longer than the endpoint's idle timeout.
+     */
+    void evictConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the rate limiter scheduling the requests sent with the supplied credentials.
+     *
+     * @param credentials the (optional) credentials.
+     * @return the rate limiter.
+     */
+    @NonNull
+    public BitbucketRateLimiter getRateLimiter(@CheckForNull Credentials credentials) {
+        String key = credentials == null || credentials.getUserPrincipal() == null
+                ? ""
+                : credentials.getUserPrincipal().getName();
+        BitbucketRateLimiter limiter = rateLimiters.get(key);
+        if (limiter == null) {
+            BitbucketRateLimiter created = new BitbucketRateLimiter();
+            limiter = rateLimiters.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Returns the cache turning repeated {@code GET} requests to this endpoint into conditional requests.
+     *
+     * @return the response cache.
+     */
+    @NonNull
+    public BitbucketResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns the coalescer sharing the result of identical requests to this endpoint that are in flight.
+     *
+     * @return the request coalescer.
+     */
+    @NonNull
+    public BitbucketRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Creates the per-request context carrying the supplied credentials and the proxy Jenkins is currently configured
+     * to use. The client is shared between callers with different credentials and outlives changes to the proxy
+     * configuration, so both must travel with each request rather than with the client.
+     *
+     * @param credentials the (optional) credentials to authenticate with.
+     * @param target      the host the credentials are sent to preemptively.
+     * @return the context to execute the request with.
+     */
+    @NonNull
+    public HttpClientContext newContext(@CheckForNull Credentials credentials, @NonNull HttpHost target) {
+        lastUsed = System.currentTimeMillis();
+        HttpClientContext context = HttpClientContext.create();
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        setProxyParams(context, credentialsProvider);
+        if (credentials != null) {
+            credentialsProvider.setCredentials(AuthScope.ANY, credentials);
+            AuthCache authCache = new BasicAuthCache();
+            authCache.put(target, new BasicScheme());
+            context.setAuthCache(authCache);
+        }
+        context.setCredentialsProvider(credentialsProvider);
+        return context;
+    }
+
+    /**
+     * Closes the client and its connection pool.
+     */
+    @Override
+    public void close() {
+        executors.shutdown();
+        responseCache.clear();
+        commitCache.clear();
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not close HTTP client for " + serverUrl, e);
+        }
+    }
+
+    private void setProxyParams(HttpClientContext context, CredentialsProvider credentialsProvider) {
+        Jenkins jenkins = Jenkins.getInstance();
+        ProxyConfiguration proxyConfig = null;
+        if (jenkins != null) {
+            proxyConfig = jenkins.proxy;
+        }
+        if (proxyConfig == null) {
+            return;
+        }
+        String host;
+        try {
+            host = new URI(serverUrl).getHost();
+        } catch (URISyntaxException e) {
+            host = null;
+        }
+        Proxy proxy = proxyConfig.createProxy(host);
+        if (proxy.type() != Proxy.Type.DIRECT) {
+            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            LOGGER.log(Level.FINEST, "Jenkins proxy: {0}", proxy.address());
+            HttpHost proxyHost = new HttpHost(proxyAddress.getHostName(), proxyAddress.getPort());
+            context.setRequestConfig(RequestConfig.copy(requestConfig).setProxy(proxyHost).build());
+            String username = proxyConfig.getUserName();
+            String password = proxyConfig.getPassword();
+            if (username != null && !"".equals(username.trim())) {
+                credentialsProvider.setCredentials(new AuthScope(proxyHost),
+                        new UsernamePasswordCredentials(username, password));
+            }
+        }
+    }
+}
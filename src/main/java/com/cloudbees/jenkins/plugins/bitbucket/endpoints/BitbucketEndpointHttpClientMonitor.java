@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.pool.PoolStats;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Evicts idle connections from the {@link BitbucketEndpointHttpClient} pools, closes the clients that are no longer
+ * needed and reports the usage of the others. Pools with
+ * requests waiting for a connection are reported at {@link Level#INFO} so that scans starved of connections can be
+ * told apart from scans throttled by Bitbucket; the usage of the other pools is reported at {@link Level#FINE}.
+ *
+ * @since 2.2.11
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class BitbucketEndpointHttpClientMonitor extends PeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketEndpointHttpClientMonitor.class.getName());
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(10);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRun() {
+        BitbucketEndpointConfiguration configuration = BitbucketEndpointConfiguration.get();
+        if (configuration == null) {
+            return;
+        }
+        configuration.evictHttpClients();
+        for (BitbucketEndpointHttpClient client : configuration.getHttpClients()) {
+            client.evictConnections();
+            PoolStats stats = client.getPoolStats();
+            Level level = stats.getPending() > 0 ? Level.INFO : Level.FINE;
+            if (LOGGER.isLoggable(level)) {
+                LOGGER.log(level, "Connection pool for {0}: {1} leased, {2} available, {3} pending (max {4})",
+                        new Object[]{
+                                client.getServerUrl(), stats.getLeased(), stats.getAvailable(), stats.getPending(),
+                                stats.getMax()
+                        });
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Queue;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A token bucket that schedules the requests sent to one {@link AbstractBitbucketEndpoint} with one set of
+ * credentials, which is the granularity at which Bitbucket applies its rate limits.
+ * <ul>
+ * <li>Until Bitbucket advertises a limit the bucket is unbounded and requests are not delayed.</li>
+ * <li>The {@code X-RateLimit-*} response headers size the bucket so that requests are paced before the limit is
+ * reached rather than after.</li>
+ * <li>A {@code 429} response (or a {@code Retry-After} header) closes the bucket for every caller until the server
+ * asks to be retried, or for an exponentially growing jittered delay when it does not say.</li>
+ * <li>Callers queue in lanes (one per job, see {@link #currentLane()}) that are served round robin, so that a large
+ * scan cannot starve the other jobs sharing the credentials.</li>
+ * </ul>
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketRateLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketRateLimiter.class.getName());
+
+    /**
+     * The maximum number of times a rate limited request is retried.
+     */
+    public static final int MAX_RETRIES = 10;
+
+    /**
+     * The backoff delay after the first rate limited response when the server does not say when to retry.
+     */
+    static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The upper bound of the backoff delay.
+     */
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Random RANDOM = new Random();
+
+    /**
+     * The lane explicitly assigned to the current thread, if any.
+     */
+    private static final ThreadLocal<String> LANE = new ThreadLocal<String>();
+
+    /**
+     * Guards all the state below.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Signalled whenever a waiter is granted a permit.
+     */
+    private final Condition granted = lock.newCondition();
+
+    /**
+     * The waiters of each lane.
+     */
+    private final Map<String, ArrayDeque<Waiter>> lanes = new HashMap<String, ArrayDeque<Waiter>>();
+
+    /**
+     * The lanes with waiters, in the order they will be served.
+     */
+    private final ArrayDeque<String> laneOrder = new ArrayDeque<String>();
+
+    /**
+     * The maximum number of tokens the bucket can hold, or {@code 0} while Bitbucket has not advertised a limit.
+     */
+    private double capacity;
+
+    /**
+     * The number of tokens added per millisecond, or {@code 0} while Bitbucket has not advertised a limit.
+     */
+    private double refillPerMilli;
+
+    /**
+     * The number of tokens in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * The (monotonic) time at which {@link #tokens} was last refilled.
+     */
+    private long lastRefill;
+
+    /**
+     * The (monotonic) time before which no permit is granted.
+     */
+    private long blockedUntil;
+
+    /**
+     * Constructor.
+     */
+    BitbucketRateLimiter() {
+        this.lastRefill = now();
+    }
+
+    /**
+     * Waits for a permit to send a request.
+     *
+     * @param lane the lane to queue in, typically {@link #currentLane()}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire(@CheckForNull String lane) throws InterruptedException {
+        lane = StringUtils.defaultString(lane);
+        lock.lockInterruptibly();
+        try {
+            if (lanes.isEmpty() && tryTake(now())) {
+                return;
+            }
+            Waiter waiter = new Waiter();
+            ArrayDeque<Waiter> waiters = lanes.get(lane);
+            if (waiters == null) {
+                waiters = new ArrayDeque<Waiter>();
+                lanes.put(lane, waiters);
+                laneOrder.addLast(lane);
+            }
+            waiters.addLast(waiter);
+            try {
+                while (true) {
+                    dispatch();
+                    if (waiter.granted) {
+                        return;
+                    }
+                    try {
+                        granted.await(Math.max(1L, millisUntilNextPermit(now())), TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        if (waiter.granted) {
+                            // the permit was granted while waking up, hand it over to the next waiter
+                            giveBack();
+                        }
+                        throw e;
+                    }
+                }
+            } finally {
+                if (!waiter.granted) {
+                    remove(lane, waiter);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the bucket from the rate limit headers of a response.
+     *
+     * @param response the response.
+     */
+    public void update(@NonNull HttpResponse response) {
+        lock.lock();
+        try {
+            long now = now();
+            long retryAfter = parseRetryAfter(response.getFirstHeader("Retry-After"));
+            if (retryAfter > 0) {
+                blockedUntil = Math.max(blockedUntil, now + retryAfter);
+            }
+            long limit = parseLong(response.getFirstHeader("X-RateLimit-Limit"));
+            long fillRate = parseLong(response.getFirstHeader("X-RateLimit-FillRate"));
+            long interval = parseLong(response.getFirstHeader("X-RateLimit-Interval-Seconds"));
+            long remaining = parseLong(response.getFirstHeader("X-RateLimit-Remaining"));
+            long reset = parseLong(response.getFirstHeader("X-RateLimit-Reset"));
+            refill(now);
+            if (fillRate > 0 && interval > 0) {
+                refillPerMilli = fillRate / (double) TimeUnit.SECONDS.toMillis(interval);
+                capacity = limit > 0 ? limit : Math.max(capacity, fillRate);
+            } else if (remaining >= 0 && reset > 0) {
+                // spread what is left of the window over the time until the window resets
+                long untilReset = TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis();
+                if (untilReset > 0) {
+                    refillPerMilli = Math.max(remaining, 1L) / (double) untilReset;
+                    capacity = limit > 0 ? limit : Math.max(capacity, remaining);
+                }
+            }
+            if (remaining >= 0 && capacity > 0) {
+                tokens = Math.min(tokens, remaining);
+            }
+            if (capacity > 0) {
+                tokens = Math.min(tokens, capacity);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a rate limited response and closes the bucket, for every caller, until the request can be retried.
+     *
+     * @param response the rate limited response.
+     * @param attempt  the number of times this request has been rate limited, starting at {@code 1}.
+     * @return the number of milliseconds before the request can be retried.
+     */
+    public long rateLimited(@NonNull HttpResponse response, int attempt) {
+        lock.lock();
+        try {
+            long now = now();
+            long delay = parseRetryAfter(response.getFirstHeader("Retry-After"));
+            if (delay <= 0) {
+                delay = backoff(attempt);
+            }
+            blockedUntil = Math.max(blockedUntil, now + delay);
+            refill(now);
+            tokens = 0;
+            LOGGER.log(Level.FINE, "Bitbucket API rate limit reached, pausing requests for {0}ms", delay);
+            return blockedUntil - now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the exponential backoff delay, with jitter, for the supplied attempt.
+     *
+     * @param attempt the number of times the request has been rate limited, starting at {@code 1}.
+     * @return the delay in milliseconds.
+     */
+    static long backoff(int attempt) {
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(Math.max(attempt - 1, 0), 16);
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+        // "equal jitter": keep half of the delay and randomize the other half
+        long half = delay / 2;
+        synchronized (RANDOM) {
+            return half + (long) (RANDOM.nextDouble() * half);
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting for a permit.
+     *
+     * @return the number of callers waiting for a permit.
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (ArrayDeque<Waiter> waiters : lanes.values()) {
+                count += waiters.size();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lane the requests of the current thread queue in: the lane assigned with {@link #enterLane(String)}
+     * or else the full name of the job (or folder) the current executor is running.
+     *
+     * @return the lane, empty when the current thread does not work for a job.
+     */
+    @NonNull
+    public static String currentLane() {
+        String lane = LANE.get();
+        if (lane != null) {
+            return lane;
+        }
+        Executor executor = Executor.currentExecutor();
+        Queue.Executable executable = executor == null ? null : executor.getCurrentExecutable();
+        if (executable != null) {
+            Queue.Task task = executable.getParent().getOwnerTask();
+            return task instanceof Item ? ((Item) task).getFullName() : task.getFullDisplayName();
+        }
+        return "";
+    }
+
+    /**
+     * Assigns a lane to the requests of the current thread until the returned scope is closed.
+     *
+     * @param lane the lane, typically the full name of the job the requests are sent for.
+     * @return the scope restoring the previous lane of the current thread when closed.
+     */
+    @NonNull
+    public static LaneScope enterLane(@NonNull String lane) {
+        LaneScope scope = new LaneScope(LANE.get());
+        LANE.set(lane);
+        return scope;
+    }
+
+    /**
+     * Wraps a task so that its requests queue in the {@link #currentLane()} of the calling thread, whichever thread
+     * ends up running it.
+     *
+     * @param callable the task.
+     * @param <V>      the type of result.
+     * @return the wrapped task.
+     */
+    @NonNull
+    public static <V> Callable<V> inCurrentLane(@NonNull final Callable<V> callable) {
+        final String lane = currentLane();
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                try (LaneScope scope = enterLane(lane)) {
+                    return callable.call();
+                }
+            }
+        };
+    }
+
+    /**
+     * Restores the previous lane of a thread.
+     */
+    public static final class LaneScope implements AutoCloseable {
+        @CheckForNull
+        private final String previous;
+
+        private LaneScope(@CheckForNull String previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            if (previous == null) {
+                LANE.remove();
+            } else {
+                LANE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the token of a permit that was granted but not used and grants it to the next waiter.
+     */
+    private void giveBack() {
+        if (capacity > 0) {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+        dispatch();
+    }
+
+    /**
+     * Grants permits, round robin across the lanes, for as long as there are tokens.
+     */
+    private void dispatch() {
+        boolean any = false;
+        long now = now();
+        while (!laneOrder.isEmpty() && tryTake(now)) {
+            String lane = laneOrder.pollFirst();
+            ArrayDeque<Waiter> waiters = lanes.get(lane);
+            waiters.pollFirst().granted = true;
+            any = true;
+            if (waiters.isEmpty()) {
+                lanes.remove(lane);
+            } else {
+                laneOrder.addLast(lane);
+            }
+        }
+        if (any) {
+            granted.signalAll();
+        }
+    }
+
+    private void remove(String lane, Waiter waiter) {
+        ArrayDeque<Waiter> waiters = lanes.get(lane);
+        if (waiters != null && waiters.remove(waiter) && waiters.isEmpty()) {
+            lanes.remove(lane);
+            laneOrder.remove(lane);
+        }
+    }
+
+    private boolean tryTake(long now) {
+        if (now < blockedUntil) {
+            return false;
+        }
+        if (capacity <= 0) {
+            return true;
+        }
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private void refill(long now) {
+        if (capacity > 0 && now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+        }
+        lastRefill = now;
+    }
+
+    private long millisUntilNextPermit(long now) {
+        long wait = blockedUntil - now;
+        if (capacity > 0 && tokens < 1 && refillPerMilli > 0) {
+            wait = Math.max(wait, (long) Math.ceil((1 - tokens) / refillPerMilli));
+        }
+        return wait;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static long parseLong(@CheckForNull Header header) {
+        if (header != null) {
+            try {
+                return Long.parseLong(header.getValue().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Ignoring malformed {0} header: {1}",
+                        new Object[]{header.getName(), header.getValue()});
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+     *
+     * @param header the header.
+     * @return the delay in milliseconds or {@code -1}.
+     */
+    static long parseRetryAfter(@CheckForNull Header header) {
+        if (header == null) {
+            return -1;
+        }
+        if (StringUtils.isNumeric(StringUtils.trim(header.getValue()))) {
+            return TimeUnit.SECONDS.toMillis(parseLong(header));
+        }
+        Date date = DateUtils.parseDate(header.getValue());
+        return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * A caller waiting for a permit.
+     */
+    private static class Waiter {
+        private boolean granted;
+    }
+}
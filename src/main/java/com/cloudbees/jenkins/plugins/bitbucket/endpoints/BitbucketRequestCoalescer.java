@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.auth.Credentials;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Coalesces identical requests to an endpoint that are in flight at the same time: the first caller performs the
+ * request and every caller arriving before it completes waits for, and shares, its (parsed) result. Several projects
+ * pointing at the same repository are typically rescanned together when a webhook fires, this turns their identical
+ * {@code GET} requests into a single network call.
+ * <p>
+ * Nothing is retained once a request completes, the next caller performs a new request.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketRequestCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketRequestCoalescer.class.getName());
+
+    /**
+     * The requests in flight, keyed by credential and URL.
+     */
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns the key identifying a request.
+     *
+     * @param credentials the (optional) credentials the request is sent with.
+     * @param url         the URL requested.
+     * @return the key.
+     */
+    @NonNull
+    public static String keyOf(@CheckForNull Credentials credentials, @NonNull String url) {
+        String user = credentials == null || credentials.getUserPrincipal() == null
+                ? ""
+                : credentials.getUserPrincipal().getName();
+        return user + '\n' + url;
+    }
+
+    /**
+     * Performs the supplied request unless an identical one is already in flight, in which case its result is
+     * shared. Callers must treat the result as immutable.
+     *
+     * @param key     the key of the request, see {@link #keyOf(Credentials, String)}.
+     * @param request the request.
+     * @param <T>     the type of the result.
+     * @return the result of the request.
+     * @throws IOException          if the request failed.
+     * @throws InterruptedException if interrupted while waiting for the request.
+     */
+    public <T> T execute(@NonNull String key, @NonNull Callable<T> request) throws IOException, InterruptedException {
+        while (true) {
+            FutureTask<T> task = new FutureTask<T>(request);
+            @SuppressWarnings("unchecked")
+            FutureTask<T> leader = (FutureTask<T>) inFlight.putIfAbsent(key, task);
+            if (leader == null) {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.remove(key, task);
+                }
+                try {
+                    return task.get();
+                } catch (ExecutionException e) {
+                    throw rethrow(e.getCause());
+                }
+            }
+            coalesced.incrementAndGet();
+            LOGGER.log(Level.FINEST, "Joining request in flight: {0}", key);
+            try {
+                return leader.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof InterruptedException) && !(cause instanceof InterruptedIOException)) {
+                    throw rethrow(cause);
+                }
+                // the caller performing the request was interrupted, not us, so perform the request ourselves
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests that shared the result of an identical request in flight.
+     *
+     * @return the number of coalesced requests.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private static IOException rethrow(Throwable cause) throws IOException, InterruptedException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
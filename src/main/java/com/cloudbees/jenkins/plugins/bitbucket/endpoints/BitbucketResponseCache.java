@@ -0,0 +1,347 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A bounded cache of the JSON bodies returned by an endpoint together with their {@code ETag} and
+ * {@code Last-Modified} validators, keyed by credential and URL. Cached validators turn repeated {@code GET} requests
+ * into conditional ones and a {@code 304 Not Modified} answer is served from the cached body, so rescanning an
+ * unchanged repository transfers (almost) nothing and costs less of the rate limit.
+ * <p>
+ * Usage: call {@link #prepare(Credentials, HttpRequestBase)} before executing a {@code GET} and pass the response
+ * through {@link #complete(Credentials, HttpRequestBase, Entry, CloseableHttpResponse)}.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketResponseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketResponseCache.class.getName());
+
+    /**
+     * The default total size of the cached bodies.
+     */
+    public static final int DEFAULT_MAX_BYTES = Integer.getInteger(
+            BitbucketResponseCache.class.getName() + ".maxBytes", 32 * 1024 * 1024);
+
+    /**
+     * The default size of the largest body that will be cached.
+     */
+    public static final int DEFAULT_MAX_ENTRY_BYTES = Integer.getInteger(
+            BitbucketResponseCache.class.getName() + ".maxEntryBytes", 1024 * 1024);
+
+    /**
+     * The total size of the cached bodies.
+     */
+    private final long maxBytes;
+
+    /**
+     * The size of the largest body that will be cached.
+     */
+    private final int maxEntryBytes;
+
+    /**
+     * The entries, in access order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * The total size of the bodies in {@link #entries}. Guarded by {@code this}.
+     */
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor using the default bounds.
+     */
+    public BitbucketResponseCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes      the total size of the cached bodies, {@code 0} disables the cache.
+     * @param maxEntryBytes the size of the largest body that will be cached.
+     */
+    public BitbucketResponseCache(long maxBytes, int maxEntryBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxEntryBytes = (int) Math.min(Math.max(0, maxEntryBytes), this.maxBytes);
+    }
+
+    /**
+     * Adds the validators of the cached response, if any, to the supplied request.
+     *
+     * @param credentials the (optional) credentials the request is sent with.
+     * @param request     the request, only {@code GET} requests are considered.
+     * @return the cached response the validators were taken from, to pass to
+     * {@link #complete(Credentials, HttpRequestBase, Entry, CloseableHttpResponse)}.
+     */
+    @CheckForNull
+    public Entry prepare(@CheckForNull Credentials credentials, @NonNull HttpRequestBase request) {
+        if (maxBytes == 0 || !"GET".equals(request.getMethod())) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(keyOf(credentials, request));
+        }
+        if (entry != null) {
+            if (entry.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Completes a request prepared with {@link #prepare(Credentials, HttpRequestBase)}. A {@code 304 Not Modified}
+     * response is replaced by the cached one, a successful JSON response carrying validators is recorded and any
+     * other response evicts the cached one.
+     *
+     * @param credentials the (optional) credentials the request was sent with.
+     * @param request     the request.
+     * @param entry       the value returned by {@link #prepare(Credentials, HttpRequestBase)}.
+     * @param response    the response.
+     * @return the response to hand to the caller, who remains responsible for closing it.
+     * @throws IOException if the response body could not be read.
+     */
+    @NonNull
+    public CloseableHttpResponse complete(@CheckForNull Credentials credentials, @NonNull HttpRequestBase request,
+                                          @CheckForNull Entry entry, @NonNull CloseableHttpResponse response)
+            throws IOException {
+        if (maxBytes == 0 || !"GET".equals(request.getMethod())) {
+            return response;
+        }
+        String key = keyOf(credentials, request);
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+            EntityUtils.consume(response.getEntity());
+            response.close();
+            hits.incrementAndGet();
+            synchronized (this) {
+                // refresh the access order
+                entries.get(key);
+            }
+            LOGGER.log(Level.FINEST, "Not modified: {0}", request.getURI());
+            return entry.toResponse();
+        }
+        misses.incrementAndGet();
+        if (status != HttpStatus.SC_OK) {
+            remove(key);
+            return response;
+        }
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        HttpEntity entity = response.getEntity();
+        if ((etag == null && lastModified == null) || entity == null || !isJson(entity)
+                || entity.getContentLength() > maxEntryBytes) {
+            remove(key);
+            return response;
+        }
+        // read at most maxEntryBytes, anything larger is handed back to the caller without being cached
+        InputStream content = entity.getContent();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                entity.getContentLength() > 0 ? (int) entity.getContentLength() : 8192);
+        byte[] chunk = new byte[8192];
+        int read;
+        while (buffer.size() <= maxEntryBytes && (read = content.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        if (buffer.size() > maxEntryBytes) {
+            remove(key);
+            InputStreamEntity replacement = new InputStreamEntity(
+                    new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), content));
+            replacement.setContentType(entity.getContentType());
+            response.setEntity(replacement);
+            return response;
+        }
+        content.close();
+        byte[] body = buffer.toByteArray();
+        Header contentType = entity.getContentType();
+        Entry created = new Entry(
+                etag == null ? null : etag.getValue(),
+                lastModified == null ? null : lastModified.getValue(),
+                contentType == null ? null : contentType.getValue(),
+                body
+        );
+        put(key, created);
+        ByteArrayEntity replacement = new ByteArrayEntity(body);
+        replacement.setContentType(contentType);
+        response.setEntity(replacement);
+        return response;
+    }
+
+    /**
+     * Returns the number of responses served from the cache.
+     *
+     * @return the number of {@code 304 Not Modified} responses served from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of responses that had to be transferred.
+     *
+     * @return the number of responses that had to be transferred.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the total size of the cached bodies.
+     *
+     * @return the total size of the cached bodies.
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Discards every cached response.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+        bytes += entry.body.length;
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            bytes -= i.next().getValue().body.length;
+            i.remove();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+    }
+
+    private static boolean isJson(HttpEntity entity) {
+        Header contentType = entity.getContentType();
+        return contentType != null && contentType.getValue().toLowerCase().contains("json");
+    }
+
+    private static String keyOf(@CheckForNull Credentials credentials, HttpRequestBase request) {
+        String user = credentials == null || credentials.getUserPrincipal() == null
+                ? ""
+                : credentials.getUserPrincipal().getName();
+        return user + '\n' + request.getURI();
+    }
+
+    /**
+     * A cached response.
+     */
+    public static final class Entry {
+        @CheckForNull
+        private final String etag;
+        @CheckForNull
+        private final String lastModified;
+        @CheckForNull
+        private final String contentType;
+        @NonNull
+        private final byte[] body;
+
+        Entry(@CheckForNull String etag, @CheckForNull String lastModified, @CheckForNull String contentType,
+              @NonNull byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private CloseableHttpResponse toResponse() {
+            CachedResponse response = new CachedResponse();
+            ByteArrayEntity entity = new ByteArrayEntity(body);
+            if (contentType != null) {
+                entity.setContentType(contentType);
+                response.setHeader(HttpHeaders.CONTENT_TYPE, contentType);
+            }
+            if (etag != null) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+            }
+            if (lastModified != null) {
+                response.setHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+            }
+            response.setEntity(entity);
+            return response;
+        }
+    }
+
+    /**
+     * A {@code 200 OK} response replayed from the cache, it holds no connection.
+     */
+    private static final class CachedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        CachedResponse() {
+            super(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -36,6 +36,7 @@ import javax.annotation.Nonnull;
 import jenkins.scm.api.SCMName;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 /**
@@ -45,6 +46,13 @@ import org.kohsuke.stapler.QueryParameter;
  */
 public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
 
+    /**
+     * The default maximum number of page requests in flight to a server when {@link #isParallelPaging()}.
+     *
+     * @since 2.2.11
+     */
+    public static final int DEFAULT_MAX_PARALLEL_PAGE_REQUESTS = 4;
+
     /**
      * Common prefixes that we should remove when inferring a display name.
      */
@@ -70,6 +78,16 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
     @NonNull
     private final String serverUrl;
 
+    /**
+     * {@code true} if and only if the pages of long listings may be requested concurrently.
+     */
+    private boolean parallelPaging;
+
+    /**
+     * The maximum number of page requests in flight to this server across all listings, {@code 0} means the default.
+     */
+    private int maxParallelPageRequests;
+
     /**
      * @param displayName   Optional name to use to describe the end-point.
      * @param serverUrl     The URL of this Bitbucket Server
@@ -104,6 +122,48 @@ public class BitbucketServerEndpoint extends AbstractBitbucketEndpoint {
         return serverUrl;
     }
 
+    /**
+     * Returns {@code true} if and only if the pages of long listings may be requested concurrently.
+     *
+     * @return {@code true} if and only if the pages of long listings may be requested concurrently.
+     * @since 2.2.11
+     */
+    public boolean isParallelPaging() {
+        return parallelPaging;
+    }
+
+    /**
+     * Sets whether the pages of long listings may be requested concurrently.
+     *
+     * @param parallelPaging {@code true} to request the pages of long listings concurrently.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public void setParallelPaging(boolean parallelPaging) {
+        this.parallelPaging = parallelPaging;
+    }
+
+    /**
+     * Returns the maximum number of page requests in flight to this server across all listings.
+     *
+     * @return the maximum number of concurrent page requests.
+     * @since 2.2.11
+     */
+    public int getMaxParallelPageRequests() {
+        return maxParallelPageRequests > 0 ? maxParallelPageRequests : DEFAULT_MAX_PARALLEL_PAGE_REQUESTS;
+    }
+
+    /**
+     * Sets the maximum number of page requests in flight to this server across all listings.
+     *
+     * @param maxParallelPageRequests the maximum number of concurrent page requests, {@code 0} to use the default.
+     * @since 2.2.11
+     */
+    @DataBoundSetter
+    public void setMaxParallelPageRequests(int maxParallelPageRequests) {
+        this.maxParallelPageRequests = Math.max(0, maxParallelPageRequests);
+    }
+
     /**
      * {@inheritDoc}
      */
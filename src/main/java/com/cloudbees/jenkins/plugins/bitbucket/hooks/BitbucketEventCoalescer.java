@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPushEvent;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Holds the {@link SCMHeadEvent}s built from webhooks for a short window and merges the ones about the same heads of
+ * the same repository: an event superseded within the window by a later one for the same heads is dropped, so a burst
+ * of pushes to a branch is fired as a single event carrying the latest hash and the projects listening only re-index
+ * once. Webhooks may be delivered out of order, a push that moves its heads to the commits the pending push moved
+ * them from is older than the pending push and is dropped instead of replacing it.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public class BitbucketEventCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketEventCoalescer.class.getName());
+
+    /**
+     * How long, in milliseconds, an event waits for a later one about the same heads. {@code 0} fires every event as
+     * soon as it arrives.
+     */
+    private static final int WINDOW_MILLIS = Math.max(0, Integer.getInteger(
+            BitbucketEventCoalescer.class.getName() + ".windowMillis", 5000));
+
+    private static final BitbucketEventCoalescer INSTANCE = new BitbucketEventCoalescer(WINDOW_MILLIS);
+
+    private final long windowMillis;
+
+    /**
+     * The latest event of each key waiting for its window to close. Guarded by {@code this}.
+     */
+    private final Map<String, SCMHeadEvent<?>> pending = new HashMap<>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param windowMillis how long an event waits for a later one with the same key.
+     */
+    BitbucketEventCoalescer(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Returns the coalescer shared by every hook processor.
+     *
+     * @return the coalescer.
+     */
+    @NonNull
+    public static BitbucketEventCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key of the events about some heads of a repository.
+     *
+     * @param instanceType the Bitbucket type that called the hook.
+     * @param repository   the repository.
+     * @param heads        what identifies the heads within the repository.
+     * @return the key.
+     */
+    @NonNull
+    public static String keyOf(@NonNull BitbucketType instanceType, @NonNull BitbucketRepository repository,
+                               @NonNull String heads) {
+        return endpointOf(instanceType, repository) + '\n'
+                + repository.getOwnerName().toLowerCase(Locale.ENGLISH) + '/'
+                + repository.getRepositoryName().toLowerCase(Locale.ENGLISH) + '\n' + heads;
+    }
+
+    private static String endpointOf(BitbucketType instanceType, BitbucketRepository repository) {
+        if (instanceType == BitbucketType.CLOUD) {
+            return BitbucketCloudEndpoint.SERVER_URL;
+        }
+        Map<String, List<BitbucketHref>> links = repository.getLinks();
+        if (links != null && links.containsKey("self")) {
+            for (BitbucketHref link : links.get("self")) {
+                try {
+                    String host = new URI(link.getHref()).getHost();
+                    if (host != null) {
+                        return host.toLowerCase(Locale.ENGLISH);
+                    }
+                } catch (URISyntaxException e) {
+                    // ignore
+                }
+            }
+        }
+        return instanceType.name();
+    }
+
+    /**
+     * Fires an event once its window closes, unless a later event with the same key replaces it in the meantime.
+     *
+     * @param key   the key of the event, see {@link #keyOf(BitbucketType, BitbucketRepository, String)}.
+     * @param event the event.
+     */
+    public void fire(@NonNull final String key, @NonNull SCMHeadEvent<?> event) {
+        if (windowMillis <= 0) {
+            dispatch(event);
+            return;
+        }
+        synchronized (this) {
+            SCMHeadEvent<?> previous = pending.get(key);
+            if (previous != null) {
+                coalesced.incrementAndGet();
+                if (isOlder(event, previous)) {
+                    LOGGER.log(Level.FINE, "Dropped event for {0} older than the pending one", key);
+                } else {
+                    // the flush already scheduled for the key fires this event instead of the one it replaced
+                    pending.put(key, event);
+                    LOGGER.log(Level.FINE, "Coalesced event for {0}", key);
+                }
+                return;
+            }
+            pending.put(key, event);
+        }
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush(key);
+            }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tells whether an event was sent before the pending event about the same heads: both are pushes and each head
+     * that the event moves is moved from that same commit by the pending push.
+     *
+     * @param event   the event received last.
+     * @param pending the event waiting for its window to close.
+     * @return {@code true} if the event is older than the pending one.
+     */
+    static boolean isOlder(@NonNull SCMHeadEvent<?> event, @NonNull SCMHeadEvent<?> pending) {
+        if (!(event.getPayload() instanceof BitbucketPushEvent)
+                || !(pending.getPayload() instanceof BitbucketPushEvent)) {
+            return false;
+        }
+        Map<String, String> movedFrom = new HashMap<>();
+        for (BitbucketPushEvent.Change change : ((BitbucketPushEvent) pending.getPayload()).getChanges()) {
+            BitbucketPushEvent.Reference old = change.getOld();
+            if (old != null && old.getTarget() != null) {
+                movedFrom.put(old.getType() + ":" + old.getName(), old.getTarget().getHash());
+            }
+        }
+        List<? extends BitbucketPushEvent.Change> changes = ((BitbucketPushEvent) event.getPayload()).getChanges();
+        if (changes.isEmpty()) {
+            return false;
+        }
+        for (BitbucketPushEvent.Change change : changes) {
+            BitbucketPushEvent.Reference moved = change.getNew();
+            if (moved == null || moved.getTarget() == null || moved.getTarget().getHash() == null
+                    || !moved.getTarget().getHash().equals(movedFrom.get(moved.getType() + ":" + moved.getName()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fires the event waiting for a key.
+     *
+     * @param key the key.
+     */
+    void flush(@NonNull String key) {
+        SCMHeadEvent<?> event;
+        synchronized (this) {
+            event = pending.remove(key);
+        }
+        if (event != null) {
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Fires an event.
+     *
+     * @param event the event.
+     */
+    void dispatch(@NonNull SCMHeadEvent<?> event) {
+        SCMHeadEvent.fireNow(event);
+    }
+
+    /**
+     * Returns the number of events waiting for their window to close.
+     *
+     * @return the number of pending events.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of events dropped in favour of a later event about the same heads.
+     *
+     * @return the number of coalesced events.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonToken;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The bounded queue between {@link BitbucketSCMSourcePushHookReceiver} and the {@link HookProcessor}s. The receiver
+ * only validates the headers of a webhook and enqueues its raw payload, a small pool of workers parses and processes
+ * the payloads. The webhooks of a repository always go to the same worker, so they are processed in the order they
+ * were received. The queue is bounded by the memory its payloads hold: when it is full the webhook is refused rather
+ * than piling up request threads. Bitbucket Cloud retries a refused webhook later but Bitbucket Server does not, every
+ * refusal is therefore logged with its repository, which only catches up with its next scan.
+ *
+ * @since 2.2.11
+ */
+@Restricted(NoExternalUse.class)
+public final class BitbucketHookQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(BitbucketHookQueue.class.getName());
+
+    /**
+     * The number of bytes that the payloads of the webhooks waiting for or being processed may hold.
+     */
+    private static final long CAPACITY_BYTES = Math.max(1, Integer.getInteger(
+            BitbucketHookQueue.class.getName() + ".capacityBytes", 64 * 1024 * 1024));
+
+    /**
+     * The number of workers processing webhooks.
+     */
+    private static final int WORKERS = Math.max(1, Integer.getInteger(
+            BitbucketHookQueue.class.getName() + ".workers", 2));
+
+    /**
+     * The number of seconds Bitbucket is asked to wait before retrying a refused webhook.
+     */
+    private static final int RETRY_AFTER_SECONDS = Math.max(1, Integer.getInteger(
+            BitbucketHookQueue.class.getName() + ".retryAfterSeconds", 30));
+
+    private static final BitbucketHookQueue INSTANCE = new BitbucketHookQueue(WORKERS, CAPACITY_BYTES);
+
+    /**
+     * One single threaded executor per worker, a repository is always processed by the same one.
+     */
+    private final ThreadPoolExecutor[] lanes;
+
+    private final long capacityBytes;
+
+    /**
+     * The bytes held by the payloads of the webhooks waiting for or being processed.
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * The total time the processed webhooks waited in the queue.
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * The longest time a webhook waited in the queue.
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * The total time spent processing webhooks.
+     */
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param workers       the number of workers.
+     * @param capacityBytes the number of bytes that the queued payloads may hold.
+     */
+    BitbucketHookQueue(int workers, long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+        this.lanes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Bitbucket webhook processing #" + i));
+            lanes[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Returns the queue shared by every webhook receiver.
+     *
+     * @return the queue.
+     */
+    @NonNull
+    public static BitbucketHookQueue get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enqueues a webhook for processing.
+     *
+     * @param type         the type of hook.
+     * @param payload      the hook payload.
+     * @param instanceType the Bitbucket type that called the hook.
+     * @param origin       the origin of the event.
+     * @return {@code true} if the webhook was enqueued, {@code false} if the queue is full.
+     */
+    public boolean submit(@NonNull final HookEventType type, @NonNull final String payload,
+                          @NonNull final BitbucketType instanceType, final String origin) {
+        final String repository = repositoryOf(payload);
+        boolean offered = offer(repository, sizeOf(payload), new Runnable() {
+            @Override
+            public void run() {
+                HookProcessor processor = type.getProcessor();
+                try {
+                    processor.process(type, payload, instanceType, origin);
+                } catch (AbstractMethodError e) {
+                    processor.process(payload, instanceType);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return type + " webhook for " + repository + " from " + origin;
+            }
+        });
+        if (!offered) {
+            LOGGER.log(Level.WARNING, "Webhook queue full, refused {0} webhook for {1} from {2}, "
+                            + "the repository is only updated by its next scan if Bitbucket does not retry",
+                    new Object[]{type, repository.isEmpty() ? "an unknown repository" : repository, origin});
+        }
+        return offered;
+    }
+
+    /**
+     * Enqueues a task behind the other tasks of the same repository, recording how long it waits and how long it
+     * runs.
+     *
+     * @param repository the repository the task is about, {@code ""} if unknown.
+     * @param bytes      the bytes held by the task until it completes.
+     * @param task       the task.
+     * @return {@code true} if the task was enqueued, {@code false} if the queue is full.
+     */
+    boolean offer(@NonNull String repository, final long bytes, @NonNull final Runnable task) {
+        long queued;
+        do {
+            queued = queuedBytes.get();
+            if (queued > 0 && queued + bytes > capacityBytes) {
+                // an idle queue takes a payload of any size, otherwise it could never be processed
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!queuedBytes.compareAndSet(queued, queued + bytes));
+        final long enqueued = System.nanoTime();
+        try {
+            laneOf(repository).execute(new Runnable() {
+                @Override
+                public void run() {
+                    long started = System.nanoTime();
+                    long wait = started - enqueued;
+                    totalWaitNanos.addAndGet(wait);
+                    long max;
+                    do {
+                        max = maxWaitNanos.get();
+                    } while (wait > max && !maxWaitNanos.compareAndSet(max, wait));
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Could not process " + task, e);
+                    } finally {
+                        queuedBytes.addAndGet(-bytes);
+                        processed.incrementAndGet();
+                        totalProcessingNanos.addAndGet(System.nanoTime() - started);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedBytes.addAndGet(-bytes);
+            rejected.incrementAndGet();
+            return false;
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    private ThreadPoolExecutor laneOf(String repository) {
+        return lanes[(repository.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * Returns the bytes held by a payload.
+     *
+     * @param payload the payload.
+     * @return the bytes held by its characters.
+     */
+    static long sizeOf(@NonNull String payload) {
+        return 2L * payload.length();
+    }
+
+    /**
+     * Reads the full name of the repository a webhook is about, without decoding the rest of its payload.
+     *
+     * @param payload the payload of the webhook.
+     * @return the lower cased full name of the repository or {@code ""} if the payload does not name one.
+     */
+    @NonNull
+    static String repositoryOf(@NonNull String payload) {
+        try {
+            org.codehaus.jackson.JsonParser parser = JsonParser.mapper.getJsonFactory().createJsonParser(payload);
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return "";
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT && "repository".equals(field)) {
+                        JsonNode repository = parser.readValueAsTree();
+                        // Bitbucket Cloud names it full_name, Bitbucket Server fullName
+                        String name = repository.path("full_name").getTextValue();
+                        if (name == null) {
+                            name = repository.path("fullName").getTextValue();
+                        }
+                        if (name == null) {
+                            String project = repository.path("project").path("key").getTextValue();
+                            String slug = repository.path("slug").getTextValue();
+                            name = project == null || slug == null ? null : project + '/' + slug;
+                        }
+                        return name == null ? "" : name.toLowerCase(Locale.ENGLISH);
+                    }
+                    parser.skipChildren();
+                }
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read the repository of a webhook payload", e);
+        }
+        return "";
+    }
+
+    /**
+     * Returns the number of seconds Bitbucket should wait before retrying a refused webhook.
+     *
+     * @return the number of seconds.
+     */
+    public int getRetryAfterSeconds() {
+        return RETRY_AFTER_SECONDS;
+    }
+
+    /**
+     * Returns the number of webhooks waiting for a worker.
+     *
+     * @return the queue depth.
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the bytes held by the payloads of the webhooks waiting for or being processed.
+     *
+     * @return the bytes held by the queue.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * Returns the number of webhooks being processed.
+     *
+     * @return the number of busy workers.
+     */
+    public int getActiveCount() {
+        int active = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            active += lane.getActiveCount();
+        }
+        return active;
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of webhooks processed, including the ones that failed.
+     *
+     * @return the number of webhooks processed.
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the average time the processed webhooks waited in the queue.
+     *
+     * @param unit the unit of the result.
+     * @return the average wait.
+     */
+    public long getAverageWait(@NonNull TimeUnit unit) {
+        long count = processed.get();
+        return count == 0 ? 0 : unit.convert(totalWaitNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a webhook waited in the queue.
+     *
+     * @param unit the unit of the result.
+     * @return the longest wait.
+     */
+    public long getMaxWait(@NonNull TimeUnit unit) {
+        return unit.convert(maxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the average time spent processing a webhook.
+     *
+     * @param unit the unit of the result.
+     * @return the average processing time.
+     */
+    public long getAverageProcessingTime(@NonNull TimeUnit unit) {
+        long count = processed.get();
+        return count == 0 ? 0 : unit.convert(totalProcessingNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reports the usage of the queue, at {@link Level#INFO} when webhooks were refused since the last report or
+     * the payloads fill more than half of the queue and at {@link Level#FINE} otherwise.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class Monitor extends PeriodicWork {
+
+        private long lastRejected;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doRun() {
+            BitbucketHookQueue queue = get();
+            long rejected = queue.getRejectedCount();
+            long bytes = queue.getQueuedBytes();
+            Level level = rejected > lastRejected || bytes > queue.getCapacityBytes() / 2 ? Level.INFO : Level.FINE;
+            lastRejected = rejected;
+            if (LOGGER.isLoggable(level)) {
+                LOGGER.log(level, "Webhook queue: {0} waiting, {1}KiB queued (max {2}KiB), {3} processing, "
+                                + "{4} accepted, {5} refused, {6} processed, {7} failed, {8}ms average wait "
+                                + "(max {9}ms), {10}ms average processing",
+                        new Object[]{
+                                queue.getDepth(), bytes / 1024, queue.getCapacityBytes() / 1024,
+                                queue.getActiveCount(), queue.getAcceptedCount(),
+                                rejected, queue.getProcessedCount(), queue.getFailedCount(),
+                                queue.getAverageWait(TimeUnit.MILLISECONDS), queue.getMaxWait(TimeUnit.MILLISECONDS),
+                                queue.getAverageProcessingTime(TimeUnit.MILLISECONDS)
+                        });
+            }
+        }
+    }
+}
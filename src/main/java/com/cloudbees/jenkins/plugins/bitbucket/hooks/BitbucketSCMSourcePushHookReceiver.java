@@ -38,6 +38,7 @@ import jenkins.scm.api.SCMEvent;
 import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.Extension;
 import hudson.model.UnprotectedRootAction;
@@ -79,7 +80,10 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
     }
 
     /**
-     * Receives Bitbucket push notifications.
+     * Receives Bitbucket push notifications. The headers are validated and the payload is handed to the
+     * {@link BitbucketHookQueue}, the notification is acknowledged with {@code 202 Accepted} before it is processed
+     * and refused with {@code 503 Service Unavailable} when the queue is full. Bitbucket Cloud retries a refused
+     * notification, Bitbucket Server does not.
      *
      * @param req Stapler request. It contains the payload in the body content
      *          and a header param "X-Event-Key" pointing to the event type.
@@ -88,7 +92,6 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
      */
     public HttpResponse doNotify(StaplerRequest req) throws IOException {
         String origin = SCMEvent.originOf(req);
-        String body = IOUtils.toString(req.getInputStream());
         String eventKey = req.getHeader("X-Event-Key");
         if (eventKey == null) {
             return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "X-Event-Key HTTP header not found");
@@ -109,12 +112,20 @@ public class BitbucketSCMSourcePushHookReceiver extends CrumbExclusion implement
             instanceType = BitbucketType.CLOUD;
         }
 
-        try {
-            type.getProcessor().process(type, body, instanceType, origin);
-        } catch (AbstractMethodError e) {
-            type.getProcessor().process(body, instanceType);
+        String body = IOUtils.toString(req.getInputStream());
+        final BitbucketHookQueue queue = BitbucketHookQueue.get();
+        if (!queue.submit(type, body, instanceType, origin)) {
+            // the queue logs the refusal with its repository
+            return new HttpResponse() {
+                @Override
+                public void generateResponse(StaplerRequest req, StaplerResponse rsp, Object node)
+                        throws IOException, ServletException {
+                    rsp.setHeader("Retry-After", Integer.toString(queue.getRetryAfterSeconds()));
+                    rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many webhooks queued");
+                }
+            };
         }
-        return HttpResponses.ok();
+        return HttpResponses.status(HttpServletResponse.SC_ACCEPTED);
     }
 
     @Override
@@ -92,8 +92,10 @@ public class PullRequestHookProcessor extends HookProcessor {
                         eventType = SCMEvent.Type.UPDATED;
                         break;
                 }
+                String key = BitbucketEventCoalescer.keyOf(instanceType, pull.getRepository(),
+                        "pull-request:" + pull.getPullRequest().getId());
                 // assume updated as a catch-all type
-                SCMHeadEvent.fireNow(new SCMHeadEvent<BitbucketPullRequestEvent>(eventType, pull, origin) {
+                BitbucketEventCoalescer.get().fire(key, new SCMHeadEvent<BitbucketPullRequestEvent>(eventType, pull, origin) {
                     @Override
                     public boolean isMatch(@NonNull SCMNavigator navigator) {
                         if (!(navigator instanceof BitbucketSCMNavigator)) {
@@ -42,6 +42,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.plugins.git.AbstractGitSCMSource;
@@ -51,6 +53,7 @@ import jenkins.scm.api.SCMHeadEvent;
 import jenkins.scm.api.SCMNavigator;
 import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.SCMSource;
+import org.apache.commons.lang.StringUtils;
 
 public class PushHookProcessor extends HookProcessor {
 
@@ -74,7 +77,12 @@ public class PushHookProcessor extends HookProcessor {
                     scmSourceReIndex(owner, repository);
                 } else {
                     SCMHeadEvent.Type type = null;
+                    Set<String> heads = new TreeSet<>();
                     for (BitbucketPushEvent.Change change: push.getChanges()) {
+                        BitbucketPushEvent.Reference ref = change.getNew() != null ? change.getNew() : change.getOld();
+                        if (ref != null) {
+                            heads.add(ref.getType() + ":" + ref.getName());
+                        }
                         if ((type == null || type == SCMEvent.Type.CREATED) && change.isCreated()) {
                             type = SCMEvent.Type.CREATED;
                         } else if ((type == null || type == SCMEvent.Type.REMOVED) && change.isClosed()) {
@@ -83,7 +91,9 @@ public class PushHookProcessor extends HookProcessor {
                             type = SCMEvent.Type.UPDATED;
                         }
                     }
-                    SCMHeadEvent.fireNow(new SCMHeadEvent<BitbucketPushEvent>(type, push, origin) {
+                    String key = BitbucketEventCoalescer.keyOf(instanceType, push.getRepository(),
+                            StringUtils.join(heads, ' '));
+                    BitbucketEventCoalescer.get().fire(key, new SCMHeadEvent<BitbucketPushEvent>(type, push, origin) {
                         @Override
                         public boolean isMatch(@NonNull SCMNavigator navigator) {
                             if (!(navigator instanceof BitbucketSCMNavigator)) {
@@ -24,9 +24,11 @@
 package com.cloudbees.jenkins.plugins.bitbucket.server.client;
 
 import com.cloudbees.jenkins.plugins.bitbucket.JsonParser;
-import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
+import com.cloudbees.jenkins.plugins.bitbucket.api.AbstractBitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketBuildStatus;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPullRequest;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
@@ -35,42 +37,51 @@ import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRequestException;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketWebHook;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCommitCache;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointConfiguration;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointExecutors;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketEndpointHttpClient;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRateLimiter;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketRequestCoalescer;
+import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketResponseCache;
 import com.cloudbees.jenkins.plugins.bitbucket.filesystem.BitbucketSCMFile;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.branch.BitbucketServerBranch;
-import com.cloudbees.jenkins.plugins.bitbucket.server.client.branch.BitbucketServerBranches;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.branch.BitbucketServerCommit;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequest;
-import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequests;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerProject;
-import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerRepositories;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.server.client.repository.BitbucketServerWebhooks;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.damnhandy.uri.template.UriTemplate;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import hudson.ProxyConfiguration;
 import hudson.Util;
 import hudson.util.Secret;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetSocketAddress;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
-import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMFile;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
@@ -79,11 +90,7 @@ import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
-import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -94,11 +101,6 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.codehaus.jackson.type.TypeReference;
@@ -107,15 +109,15 @@ import org.codehaus.jackson.type.TypeReference;
  * Bitbucket API client.
  * Developed and test with Bitbucket 4.3.2
  */
-public class BitbucketServerAPIClient implements BitbucketApi {
+public class BitbucketServerAPIClient extends AbstractBitbucketApi {
 
     private static final Logger LOGGER = Logger.getLogger(BitbucketServerAPIClient.class.getName());
     private static final String API_BASE_PATH = "/rest/api/1.0";
-    private static final String API_REPOSITORIES_PATH = API_BASE_PATH + "/projects/{owner}/repos{?start}";
+    private static final String API_REPOSITORIES_PATH = API_BASE_PATH + "/projects/{owner}/repos{?start,limit}";
     private static final String API_REPOSITORY_PATH = API_BASE_PATH + "/projects/{owner}/repos/{repo}";
     private static final String API_DEFAULT_BRANCH_PATH = API_REPOSITORY_PATH + "/branches/default";
-    private static final String API_BRANCHES_PATH = API_REPOSITORY_PATH + "/branches{?start,limit}";
-    private static final String API_PULL_REQUESTS_PATH = API_REPOSITORY_PATH + "/pull-requests{?start,limit}";
+    private static final String API_BRANCHES_PATH = API_REPOSITORY_PATH + "/branches{?filterText,start,limit}";
+    private static final String API_PULL_REQUESTS_PATH = API_REPOSITORY_PATH + "/pull-requests{?at,direction,state,start,limit}";
     private static final String API_PULL_REQUEST_PATH = API_REPOSITORY_PATH + "/pull-requests/{id}";
     private static final String API_BROWSE_PATH = API_REPOSITORY_PATH + "/browse{/path}{?at}";
     private static final String API_COMMITS_PATH = API_REPOSITORY_PATH + "/commits{/hash}";
@@ -129,6 +131,13 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     private static final String API_COMMIT_STATUS_PATH = "/rest/build-status/1.0/commits{/hash}";
     private static final Integer DEFAULT_PAGE_LIMIT = 200;
 
+    /**
+     * The most listings a filtered listing may be split into, beyond that the whole listing is cheaper.
+     */
+    private static final int MAX_FILTERED_LISTINGS = 5;
+
+    private static final int API_RATE_LIMIT_CODE = 429;
+
     /**
      * Repository owner.
      */
@@ -150,8 +159,6 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      */
     private final UsernamePasswordCredentials credentials;
 
-    private HttpClientContext context;
-
     private final String baseURL;
 
     public BitbucketServerAPIClient(@NonNull String baseURL, @NonNull String owner, @CheckForNull String repositoryName,
@@ -261,36 +268,61 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @NonNull
     @Override
     public List<BitbucketServerPullRequest> getPullRequests() throws IOException, InterruptedException {
-        UriTemplate template = UriTemplate
+        try {
+            return iteratePullRequests().toList();
+        } catch (IOException e) {
+            throw new IOException("I/O error when accessing URL: " + pullRequestsTemplate().expand(), e);
+        }
+    }
+
+    private UriTemplate pullRequestsTemplate() {
+        return UriTemplate
                 .fromTemplate(API_PULL_REQUESTS_PATH)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .set("start", 0)
                 .set("limit", DEFAULT_PAGE_LIMIT);
-        String url = template.expand();
+    }
 
-        try {
-            List<BitbucketServerPullRequest> pullRequests = new ArrayList<>();
-            String response = getRequest(url);
-            BitbucketServerPullRequests page = JsonParser.toJava(response, BitbucketServerPullRequests.class);
-            pullRequests.addAll(page.getValues());
-            while (!page.isLastPage()) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
-                }
-                Integer limit = page.getLimit();
-                url = template
-                        .set("start", page.getNextPageStart())
-                        .set("limit", limit == null ? DEFAULT_PAGE_LIMIT : limit)
-                        .expand();
-                response = getRequest(url);
-                page = JsonParser.toJava(response, BitbucketServerPullRequests.class);
-                pullRequests.addAll(page.getValues());
-            }
-            return pullRequests;
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketServerPullRequest> iteratePullRequests() {
+        return listPullRequests(Collections.singletonList(pullRequestsTemplate()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketServerPullRequest> iteratePullRequests(
+            @NonNull BitbucketNameQuery targets) {
+        List<String> names = pushableClause(targets, EnumSet.of(BitbucketNameQuery.Operator.EQUALS));
+        if (names == null) {
+            return iteratePullRequests();
+        }
+        // one listing of the open pull requests into each target branch
+        List<UriTemplate> templates = new ArrayList<>(names.size());
+        for (String name : names) {
+            templates.add(pullRequestsTemplate()
+                    .set("at", "refs/heads/" + name)
+                    .set("direction", "INCOMING")
+                    .set("state", "OPEN"));
         }
+        return listPullRequests(templates);
+    }
+
+    private BitbucketPagedIterable<BitbucketServerPullRequest> listPullRequests(List<UriTemplate> templates) {
+        return new PagedListing<BitbucketServerPullRequest>(templates,
+                new TypeReference<BitbucketServerPage<BitbucketServerPullRequest>>() {}) {
+            @Override
+            protected Object keyOf(BitbucketServerPullRequest value) {
+                return value.getId();
+            }
+        };
     }
 
     /**
@@ -305,12 +337,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("repo", repositoryName)
                 .set("id", id)
                 .expand();
-        String response = getRequest(url);
-        try {
-            return JsonParser.toJava(response, BitbucketServerPullRequest.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
-        }
+        return getRequest(url, new TypeReference<BitbucketServerPullRequest>(){});
     }
 
     /**
@@ -328,12 +355,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .expand();
-        String response = getRequest(url);
-        try {
-            return JsonParser.toJava(response, BitbucketServerRepository.class);
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
-        }
+        return getRequest(url, new TypeReference<BitbucketServerRepository>(){});
     }
 
     /**
@@ -373,6 +395,12 @@ public class BitbucketServerAPIClient implements BitbucketApi {
      */
     @Override
     public boolean checkPathExists(@NonNull String branchOrHash, @NonNull String path) throws IOException {
+        BitbucketCommitCache cache = BitbucketEndpointConfiguration.get().getHttpClient(baseURL).getCommitCache();
+        Boolean exists = cache.getCachedPathExists(credentials, getUserCentricOwner(), repositoryName, branchOrHash,
+                path);
+        if (exists != null) {
+            return exists;
+        }
         String url = UriTemplate
                 .fromTemplate(API_BROWSE_PATH)
                 .set("owner", getUserCentricOwner())
@@ -381,6 +409,10 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("at", branchOrHash)
                 .expand();
         int status = getRequestStatus(url);
+        if (status == HttpStatus.SC_OK || status == HttpStatus.SC_NOT_FOUND) {
+            cache.cachePathExists(credentials, getUserCentricOwner(), repositoryName, branchOrHash, path,
+                    status == HttpStatus.SC_OK);
+        }
         return HttpStatus.SC_OK == status;
     }
 
@@ -410,33 +442,114 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     @Override
     @NonNull
     public List<BitbucketServerBranch> getBranches() throws IOException, InterruptedException {
-        UriTemplate template = UriTemplate
+        try {
+            return iterateBranches().toList();
+        } catch (IOException e) {
+            throw new IOException("I/O error when accessing URL: " + branchesTemplate().expand(), e);
+        }
+    }
+
+    private UriTemplate branchesTemplate() {
+        return UriTemplate
                 .fromTemplate(API_BRANCHES_PATH)
                 .set("owner", getUserCentricOwner())
                 .set("repo", repositoryName)
                 .set("start", 0)
                 .set("limit", DEFAULT_PAGE_LIMIT);
-        String url = template.expand();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketServerBranch> iterateBranches() {
+        return listBranches(Collections.singletonList(branchesTemplate()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public BitbucketPagedIterable<BitbucketServerBranch> iterateBranches(@NonNull BitbucketNameQuery query) {
+        List<String> filterTexts = pushableClause(query,
+                EnumSet.of(BitbucketNameQuery.Operator.EQUALS, BitbucketNameQuery.Operator.CONTAINS));
+        if (filterTexts == null) {
+            return iterateBranches();
+        }
+        // filterText is a case insensitive "contains", one listing per alternative of the most selective clause
+        List<UriTemplate> templates = new ArrayList<>(filterTexts.size());
+        for (String filterText : filterTexts) {
+            templates.add(branchesTemplate().set("filterText", filterText));
+        }
+        return listBranches(templates);
+    }
+
+    /**
+     * Picks the clause of a query that needs the fewest listings, among those only using the supported operators.
+     *
+     * @param query     the query.
+     * @param operators the operators the listing can express.
+     * @return the values of the clause, each needing its own listing, or {@code null} if the query cannot be pushed
+     * down.
+     */
+    @CheckForNull
+    private static List<String> pushableClause(@NonNull BitbucketNameQuery query,
+                                               @NonNull Set<BitbucketNameQuery.Operator> operators) {
+        List<String> best = null;
+        clauses:
+        for (List<BitbucketNameQuery.Term> clause : query.getClauses()) {
+            if (clause.size() > MAX_FILTERED_LISTINGS || best != null && clause.size() >= best.size()) {
+                continue;
+            }
+            List<String> values = new ArrayList<>(clause.size());
+            for (BitbucketNameQuery.Term term : clause) {
+                if (!operators.contains(term.getOperator())) {
+                    continue clauses;
+                }
+                values.add(term.getValue());
+            }
+            best = values;
+        }
+        return best;
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @CheckForNull
+    @Override
+    public BitbucketServerBranch getBranch(@NonNull String branchName) throws IOException, InterruptedException {
+        // There is no lookup by exact name, filterText narrows the listing to the branches containing the name
+        UriTemplate template = branchesTemplate().set("filterText", branchName);
         try {
-            List<BitbucketServerBranch> branches = new ArrayList<>();
-            String response = getRequest(url);
-            BitbucketServerBranches page = JsonParser.toJava(response, BitbucketServerBranches.class);
-            branches.addAll(page.getValues());
-            while (!page.isLastPage()) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
+            for (BitbucketServerBranch branch : listBranches(Collections.singletonList(template))) {
+                if (branchName.equals(branch.getName())) {
+                    return branch;
                 }
-                Integer limit = page.getLimit();
-                url = template
-                        .set("start", page.getNextPageStart())
-                        .set("limit", limit == null ? DEFAULT_PAGE_LIMIT : limit)
-                        .expand();
-                response = getRequest(url);
-                page = JsonParser.toJava(response, BitbucketServerBranches.class);
-                branches.addAll(page.getValues());
             }
-            for (final BitbucketServerBranch branch: branches) {
+        } catch (BitbucketPagedIterable.FetchException e) {
+            try {
+                e.unwrap();
+            } catch (IOException ioe) {
+                throw new IOException("I/O error when accessing URL: " + template.expand(), ioe);
+            }
+        }
+        return null;
+    }
+
+    private BitbucketPagedIterable<BitbucketServerBranch> listBranches(List<UriTemplate> templates) {
+        return new PagedListing<BitbucketServerBranch>(templates,
+                new TypeReference<BitbucketServerPage<BitbucketServerBranch>>() {}) {
+            @Override
+            protected Object keyOf(BitbucketServerBranch value) {
+                return value.getName();
+            }
+
+            @Override
+            protected BitbucketServerBranch prepare(BitbucketServerBranch value) {
+                final BitbucketServerBranch branch = new BitbucketServerBranch(value.getName(), value.getRawNode());
                 branch.setTimestampClosure(new Callable<Long>() {
                     @Override
                     public Long call() throws Exception {
@@ -447,16 +560,19 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                         return 0L;
                     }
                 });
+                return branch;
             }
-            return branches;
-        } catch (IOException e) {
-            throw new IOException("I/O error when accessing URL: " + url, e);
-        }
+        };
     }
 
     /** {@inheritDoc} */
     @Override
     public BitbucketCommit resolveCommit(@NonNull String hash) throws IOException {
+        BitbucketCommitCache cache = BitbucketEndpointConfiguration.get().getHttpClient(baseURL).getCommitCache();
+        BitbucketCommit commit = cache.getCachedCommit(credentials, getUserCentricOwner(), repositoryName, hash);
+        if (commit != null) {
+            return commit;
+        }
         String url = UriTemplate
                 .fromTemplate(API_COMMITS_PATH)
                 .set("owner", getUserCentricOwner())
@@ -464,11 +580,12 @@ public class BitbucketServerAPIClient implements BitbucketApi {
                 .set("hash", hash)
                 .expand();
         try {
-            String response = getRequest(url);
-            return JsonParser.toJava(response, BitbucketServerCommit.class);
+            commit = getRequest(url, new TypeReference<BitbucketServerCommit>(){});
         } catch (IOException e) {
             throw new IOException("I/O error when accessing URL: " + url, e);
         }
+        cache.cacheCommit(credentials, getUserCentricOwner(), repositoryName, hash, commit);
+        return commit;
     }
 
     /** {@inheritDoc} */
@@ -557,25 +674,19 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         UriTemplate template = UriTemplate
                 .fromTemplate(API_REPOSITORIES_PATH)
                 .set("owner", getUserCentricOwner())
-                .set("start", 0);
+                .set("start", 0)
+                .set("limit", DEFAULT_PAGE_LIMIT);
+        PagedListing<BitbucketServerRepository> listing = new PagedListing<BitbucketServerRepository>(Collections.singletonList(template),
+                new TypeReference<BitbucketServerPage<BitbucketServerRepository>>() {}) {
+            @Override
+            protected Object keyOf(BitbucketServerRepository value) {
+                return value.getRepositoryName();
+            }
+        };
         String url = template.expand();
 
         try {
-            List<BitbucketServerRepository> repositories = new ArrayList<>();
-            String response = getRequest(url);
-            BitbucketServerRepositories page = JsonParser.toJava(response, BitbucketServerRepositories.class);
-            repositories.addAll(page.getValues());
-            while (!page.isLastPage()) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
-                }
-                url = template
-                        .set("start", page.getNextPageStart())
-                        .expand();
-                response = getRequest(url);
-                page = JsonParser.toJava(response, BitbucketServerRepositories.class);
-                repositories.addAll(page.getValues());
-            }
+            List<BitbucketServerRepository> repositories = listing.toList();
             Collections.sort(repositories, new Comparator<BitbucketServerRepository>() {
                 @Override
                 public int compare(BitbucketServerRepository o1, BitbucketServerRepository o2) {
@@ -597,16 +708,260 @@ public class BitbucketServerAPIClient implements BitbucketApi {
         return getRepositories(null);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The name filter of Bitbucket Server matches the display names of the repositories, while the names used
+     * throughout the plugin are the slugs, so only exact names are pushed down: each one is looked up directly.
+     */
+    @NonNull
+    @Override
+    public List<BitbucketServerRepository> getRepositories(@CheckForNull UserRoleInRepository role,
+                                                           @NonNull BitbucketNameQuery names)
+            throws IOException, InterruptedException {
+        List<String> slugs = pushableClause(names, EnumSet.of(BitbucketNameQuery.Operator.EQUALS));
+        if (slugs == null) {
+            return getRepositories(role);
+        }
+        List<BitbucketServerRepository> repositories = new ArrayList<>(slugs.size());
+        for (String slug : new TreeSet<>(slugs)) {
+            String url = UriTemplate
+                    .fromTemplate(API_REPOSITORY_PATH)
+                    .set("owner", getUserCentricOwner())
+                    .set("repo", slug)
+                    .expand();
+            try {
+                repositories.add(getRequest(url, new TypeReference<BitbucketServerRepository>(){}));
+            } catch (FileNotFoundException e) {
+                // no such repository
+            }
+        }
+        return repositories;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The repositories of Bitbucket Server carry no timestamp of their last change.
+     */
+    @CheckForNull
+    @Override
+    public List<BitbucketServerRepository> getRepositoriesChangedSince(@CheckForNull UserRoleInRepository role,
+                                                                       long since) {
+        return null;
+    }
+
     @Override
     public boolean isPrivate() throws IOException {
         return getRepository().isPrivate();
     }
 
+    private <V> BitbucketServerPage<V> getPage(String url, TypeReference<BitbucketServerPage<V>> type)
+            throws IOException {
+        return getRequest(url, type);
+    }
+
+    private static <V> BitbucketServerPage<V> getPageResult(Future<BitbucketServerPage<V>> future)
+            throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * A paged listing that fetches its pages as iteration reaches them. When the endpoint allows it, each fetch after
+     * the first page requests a wave of {@link BitbucketEndpointExecutors#getPageRequestConcurrency()} consecutive
+     * offsets concurrently, then reassembles the pages in order. A page whose offset differs from the
+     * {@code nextPageStart} of the page before it means the listing changed during the scan, so the rest of the wave
+     * is discarded and the next fetch resumes from the reported offset. Values that a changed listing shifted across a
+     * page boundary are only reported once.
+     *
+     * @param <V> the type of the values.
+     */
+    private abstract class PagedListing<V> extends BitbucketPagedIterable<V> {
+
+        /**
+         * The listing URI templates, the values of all the listings are reported as one listing.
+         */
+        private final List<UriTemplate> templates;
+
+        /**
+         * The page type.
+         */
+        private final TypeReference<BitbucketServerPage<V>> type;
+
+        PagedListing(List<UriTemplate> templates, TypeReference<BitbucketServerPage<V>> type) {
+            this.templates = templates;
+            this.type = type;
+        }
+
+        /**
+         * Returns the identity of a value, used to drop duplicates.
+         *
+         * @param value the value.
+         * @return the identity of the value.
+         */
+        protected abstract Object keyOf(V value);
+
+        /**
+         * Prepares a value before it is reported. The pages may be shared with other callers by the request coalescer,
+         * so a value that needs changes must be copied rather than modified.
+         *
+         * @param value the value as decoded from the page.
+         * @return the value to report.
+         */
+        protected V prepare(V value) {
+            return value;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @NonNull
+        @Override
+        protected Pages<V> pages() {
+            return new Walk();
+        }
+
+        /**
+         * One walk of the listings.
+         */
+        private class Walk implements Pages<V> {
+
+            /**
+             * The listing URI templates still to walk after the current one.
+             */
+            private final Iterator<UriTemplate> remaining = templates.iterator();
+
+            /**
+             * The current listing URI template.
+             */
+            private UriTemplate template = remaining.next();
+
+            /**
+             * The identities of the values reported so far.
+             */
+            private final Set<Object> seen = new HashSet<>();
+
+            /**
+             * The offset of the next page, {@code null} before the first page is fetched.
+             */
+            private Integer next;
+
+            /**
+             * The page size reported by the server.
+             */
+            private int limit = DEFAULT_PAGE_LIMIT;
+
+            /**
+             * {@code true} once the last page has been fetched.
+             */
+            private boolean done;
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public List<V> nextPage() throws IOException, InterruptedException {
+                if (done) {
+                    if (!remaining.hasNext()) {
+                        return null;
+                    }
+                    template = remaining.next();
+                    next = null;
+                    limit = DEFAULT_PAGE_LIMIT;
+                    done = false;
+                }
+                List<V> result = new ArrayList<>();
+                if (next == null) {
+                    BitbucketServerPage<V> page = getPage(expand(template, 0, DEFAULT_PAGE_LIMIT), type);
+                    if (page.getLimit() != null && page.getLimit() > 0) {
+                        limit = page.getLimit();
+                    }
+                    accept(result, page);
+                    return result;
+                }
+                BitbucketEndpointExecutors executors =
+                        BitbucketEndpointConfiguration.get().getHttpClient(baseURL).getExecutors();
+                int concurrency = executors.getPageRequestConcurrency();
+                if (concurrency <= 1) {
+                    accept(result, getPage(expand(template, next, limit), type));
+                    return result;
+                }
+                int start = next;
+                List<Future<BitbucketServerPage<V>>> wave = new ArrayList<>(concurrency);
+                ExecutorService executor = executors.getPageRequestExecutor();
+                for (int i = 0; i < concurrency; i++) {
+                    final String url = expand(template, start + i * limit, limit);
+                    wave.add(executor.submit(BitbucketRateLimiter.inCurrentLane(
+                            new Callable<BitbucketServerPage<V>>() {
+                                @Override
+                                public BitbucketServerPage<V> call() throws Exception {
+                                    return getPage(url, type);
+                                }
+                            })));
+                }
+                try {
+                    for (int i = 0; i < wave.size() && !done; i++) {
+                        if (next != start + i * limit) {
+                            LOGGER.log(Level.FINE, "Listing of {0}/{1} changed during the scan, resuming from {2}",
+                                    new Object[]{owner, repositoryName, next});
+                            break;
+                        }
+                        accept(result, getPageResult(wave.get(i)));
+                    }
+                } finally {
+                    for (Future<BitbucketServerPage<V>> future : wave) {
+                        future.cancel(true);
+                    }
+                }
+                return result;
+            }
+
+            private void accept(List<V> result, BitbucketServerPage<V> page) {
+                for (V value : page.getValues()) {
+                    if (seen.add(keyOf(value))) {
+                        result.add(prepare(value));
+                    }
+                }
+                if (page.isLastPage()) {
+                    done = true;
+                } else {
+                    next = page.getNextPageStart();
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands a listing URI template for one page. The templates are shared by the walks of a listing, so they are
+     * only modified and expanded while holding their lock.
+     *
+     * @param template the listing URI template.
+     * @param start    the offset of the page.
+     * @param limit    the size of the page.
+     * @return the URL of the page.
+     */
+    private static String expand(UriTemplate template, int start, int limit) {
+        synchronized (template) {
+            return template.set("start", start).set("limit", limit).expand();
+        }
+    }
+
     private String getRequest(String path) throws IOException {
         HttpGet httpget = new HttpGet(this.baseURL + path);
 
-        try(CloseableHttpClient client = getHttpClient(getMethodHost(httpget));
-                CloseableHttpResponse response = client.execute(httpget, context)) {
+        try(CloseableHttpResponse response = executeMethod(httpget)) {
             String content;
             long len = response.getEntity().getContentLength();
             if (len == 0) {
@@ -643,64 +998,103 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     }
 
     /**
-     * Create HttpClient from given host/port
-     * @param host must be of format: scheme://host:port. e.g. http://localhost:7990
-     * @return CloseableHttpClient
+     * Requests the supplied path and decodes the JSON response straight from the connection, without buffering it
+     * first. The connection is returned to the pool as soon as the response is decoded. Concurrent identical requests
+     * (same server, credentials and path) share a single call and its decoded response.
+     *
+     * @param path the path to request.
+     * @param type the type to decode.
+     * @param <T>  the type to decode.
+     * @return the decoded response, which must not be modified.
+     * @throws IOException if there was a network communications error or the response could not be decoded.
+     */
+    private <T> T getRequest(final String path, final TypeReference<T> type) throws IOException {
+        BitbucketEndpointHttpClient httpClient = BitbucketEndpointConfiguration.get().getHttpClient(baseURL);
+        try {
+            return httpClient.getRequestCoalescer().execute(
+                    BitbucketRequestCoalescer.keyOf(credentials, path),
+                    new Callable<T>() {
+                        @Override
+                        public T call() throws IOException {
+                            return fetch(path, type);
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response from url: " + path);
+        }
+    }
+
+    private <T> T fetch(String path, TypeReference<T> type) throws IOException {
+        HttpGet httpget = new HttpGet(this.baseURL + path);
+
+        try (CloseableHttpResponse response = executeMethod(httpget)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK) {
+                EntityUtils.consume(response.getEntity());
+                if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                    throw new FileNotFoundException("URL: " + path);
+                }
+                throw new BitbucketRequestException(statusCode,
+                        "HTTP request error. Status: " + statusCode
+                                + ": " + response.getStatusLine().getReasonPhrase() + ".\n" + response);
+            }
+            try (InputStream is = response.getEntity().getContent()) {
+                return JsonParser.toJava(is, type);
+            }
+        } catch (BitbucketRequestException | FileNotFoundException | InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IOException("Communication error for url: " + path, e);
+        } finally {
+            httpget.releaseConnection();
+        }
+    }
+
+    /**
+     * Executes the request with the {@link BitbucketEndpointHttpClient} shared by all the clients of this server, so
+     * that connections (and their TLS sessions) are pooled and kept alive between calls.
+     *
+     * @param request the request.
+     * @return the response, which the caller is responsible for closing.
+     * @throws IOException if there was a network communications error.
      */
-    private CloseableHttpClient getHttpClient(String host) {
-        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-
-        if (credentials != null) {
-            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, credentials);
-            AuthCache authCache = new BasicAuthCache();
-            authCache.put(HttpHost.create(host), new BasicScheme());
-            context = HttpClientContext.create();
-            context.setCredentialsProvider(credentialsProvider);
-            context.setAuthCache(authCache);
-        }
-
-        setClientProxyParams(host, httpClientBuilder);
-
-        return httpClientBuilder.build();
-    }
-
-    private void setClientProxyParams(String host, HttpClientBuilder builder) {
-        Jenkins jenkins = Jenkins.getInstance();
-        ProxyConfiguration proxyConfig = null;
-        if (jenkins != null) {
-            proxyConfig = jenkins.proxy;
-        }
-
-        Proxy proxy = Proxy.NO_PROXY;
-        if (proxyConfig != null) {
-            proxy = proxyConfig.createProxy(host);
-        }
-
-        if (proxy.type() != Proxy.Type.DIRECT) {
-            final InetSocketAddress proxyAddress = (InetSocketAddress)proxy.address();
-            LOGGER.log(Level.FINE, "Jenkins proxy: {0}", proxy.address());
-            builder.setProxy(new HttpHost(proxyAddress.getHostName(), proxyAddress.getPort()));
-            String username = proxyConfig.getUserName();
-            String password = proxyConfig.getPassword();
-            if (username != null && !"".equals(username.trim())) {
-                LOGGER.fine("Using proxy authentication (user=" + username + ")");
-                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
-                AuthCache authCache = new BasicAuthCache();
-                authCache.put(HttpHost.create(proxyAddress.getHostName()), new BasicScheme());
-                context = HttpClientContext.create();
-                context.setCredentialsProvider(credentialsProvider);
-                context.setAuthCache(authCache);
+    private CloseableHttpResponse executeMethod(HttpRequestBase request) throws IOException {
+        BitbucketEndpointHttpClient httpClient = BitbucketEndpointConfiguration.get().getHttpClient(baseURL);
+        HttpClientContext context = httpClient.newContext(credentials, HttpHost.create(getMethodHost(request)));
+        BitbucketRateLimiter rateLimiter = httpClient.getRateLimiter(credentials);
+        String lane = BitbucketRateLimiter.currentLane();
+        BitbucketResponseCache.Entry cached = httpClient.getResponseCache().prepare(credentials, request);
+        try {
+            rateLimiter.acquire(lane);
+            CloseableHttpResponse response = httpClient.getClient().execute(request, context);
+            rateLimiter.update(response);
+            int attempt = 0;
+            while (response.getStatusLine().getStatusCode() == API_RATE_LIMIT_CODE) {
+                long delay = rateLimiter.rateLimited(response, ++attempt);
+                EntityUtils.consumeQuietly(response.getEntity());
+                response.close();
+                if (attempt > BitbucketRateLimiter.MAX_RETRIES) {
+                    throw new BitbucketRequestException(API_RATE_LIMIT_CODE,
+                            "Bitbucket Server API rate limit still exceeded after "
+                                    + BitbucketRateLimiter.MAX_RETRIES + " retries for url: " + request.getURI());
+                }
+                LOGGER.log(Level.FINE, "Bitbucket Server API rate limit reached, retrying in {0}ms", delay);
+                rateLimiter.acquire(lane);
+                response = httpClient.getClient().execute(request, context);
+                rateLimiter.update(response);
             }
+            return httpClient.getResponseCache().complete(credentials, request, cached, response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Bitbucket Server API rate limit");
         }
     }
 
     private int getRequestStatus(String path) throws IOException {
         HttpGet httpget = new HttpGet(this.baseURL + path);
 
-        try(CloseableHttpClient client = getHttpClient(getMethodHost(httpget));
-                CloseableHttpResponse response = client.execute(httpget, context)) {
+        try(CloseableHttpResponse response = executeMethod(httpget)) {
             EntityUtils.consume(response.getEntity());
             return response.getStatusLine().getStatusCode();
         } finally {
@@ -739,14 +1133,7 @@ public class BitbucketServerAPIClient implements BitbucketApi {
     }
 
     private String doRequest(HttpRequestBase request) throws IOException {
-        RequestConfig.Builder requestConfig = RequestConfig.custom();
-        requestConfig.setConnectTimeout(10 * 1000);
-        requestConfig.setConnectionRequestTimeout(60 * 1000);
-        requestConfig.setSocketTimeout(60 * 1000);
-        request.setConfig(requestConfig.build());
-
-        try(CloseableHttpClient client = getHttpClient(getMethodHost(request));
-                CloseableHttpResponse response = client.execute(request, context)) {
+        try(CloseableHttpResponse response = executeMethod(request)) {
             if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NO_CONTENT) {
                 EntityUtils.consume(response.getEntity());
                 // 204, no content
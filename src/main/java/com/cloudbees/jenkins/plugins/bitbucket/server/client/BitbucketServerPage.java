@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.server.client;
+
+import java.util.Collections;
+import java.util.List;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * A page of a Bitbucket Server paged API response, which is addressed by its {@code start} offset and {@code limit}.
+ *
+ * @param <V> the type of the values.
+ * @since 2.2.11
+ */
+public class BitbucketServerPage<V> {
+
+    private List<V> values;
+
+    private Integer size;
+
+    private Integer limit;
+
+    private Integer start;
+
+    @JsonProperty("isLastPage")
+    private Boolean lastPage;
+
+    private Integer nextPageStart;
+
+    public List<V> getValues() {
+        return values == null ? Collections.<V>emptyList() : values;
+    }
+
+    public void setValues(List<V> values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns the number of values in this page (not the total number of values).
+     *
+     * @return the number of values in this page.
+     */
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public Integer getStart() {
+        return start;
+    }
+
+    public void setStart(Integer start) {
+        this.start = start;
+    }
+
+    public boolean isLastPage() {
+        return lastPage == null || lastPage || nextPageStart == null;
+    }
+
+    public void setLastPage(Boolean lastPage) {
+        this.lastPage = lastPage;
+    }
+
+    public Integer getNextPageStart() {
+        return nextPageStart;
+    }
+
+    public void setNextPageStart(Integer nextPageStart) {
+        this.nextPageStart = nextPageStart;
+    }
+}
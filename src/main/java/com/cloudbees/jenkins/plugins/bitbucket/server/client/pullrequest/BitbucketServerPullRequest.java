@@ -50,6 +50,11 @@ public class BitbucketServerPullRequest implements BitbucketPullRequest {
 
     private String authorLogin;
 
+    /**
+     * The state of the pull request: {@code OPEN}, {@code MERGED} or {@code DECLINED}.
+     */
+    private String state;
+
     @JsonProperty
     @JsonDeserialize(keyAs = String.class, contentUsing = BitbucketHref.Deserializer.class)
     private Map<String, List<BitbucketHref>> links;
@@ -81,6 +86,14 @@ public class BitbucketServerPullRequest implements BitbucketPullRequest {
         this.id = id;
     }
 
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
     @Override
     public String getTitle() {
         return this.title;
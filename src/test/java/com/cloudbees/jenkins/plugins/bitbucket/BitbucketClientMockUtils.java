@@ -25,6 +25,8 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketApi;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketHref;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPagedIterable;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryProtocol;
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
@@ -36,6 +38,7 @@ import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullR
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketCloudRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketCloudTeam;
 import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketRepositoryHook;
+import com.cloudbees.jenkins.plugins.bitbucket.client.repository.UserRoleInRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.hooks.BitbucketSCMSourcePushHookReceiver;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
@@ -48,6 +51,7 @@ import java.util.HashMap;
 import java.util.List;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -64,6 +68,11 @@ public class BitbucketClientMockUtils {
         branches.add(getBranch("branch2", "707c59ce8292c927dddb6807fcf9c3c5e7c9b00f"));
         // add branches
         when(bitbucket.getBranches()).thenReturn(branches);
+        when(bitbucket.iterateBranches()).thenReturn(pagedIterable(branches));
+        when(bitbucket.iterateBranches(any(BitbucketNameQuery.class))).thenReturn(pagedIterable(branches));
+        for (BitbucketCloudBranch branch : branches) {
+            when(bitbucket.getBranch(branch.getName())).thenReturn(branch);
+        }
         if (BitbucketRepositoryType.MERCURIAL == type) {
             withMockMercurialRepos(bitbucket);
         } else {
@@ -72,10 +81,18 @@ public class BitbucketClientMockUtils {
 
         if (includePullRequests) {
             when(bitbucket.getPullRequests()).thenReturn(Arrays.asList(getPullRequest()));
+            when(bitbucket.iteratePullRequests()).thenReturn(pagedIterable(Arrays.asList(getPullRequest())));
+            when(bitbucket.iteratePullRequests(any(BitbucketNameQuery.class)))
+                    .thenReturn(pagedIterable(Arrays.asList(getPullRequest())));
             when(bitbucket.checkPathExists("e851558f77c098d21af6bb8cc54a423f7cf12147", "markerfile.txt"))
                     .thenReturn(true);
             when(bitbucket.resolveSourceFullHash(any(BitbucketPullRequestValue.class)))
                     .thenReturn("e851558f77c098d21af6bb8cc54a423f7cf12147");
+        } else {
+            when(bitbucket.iteratePullRequests())
+                    .thenReturn(pagedIterable(Collections.<BitbucketPullRequestValue>emptyList()));
+            when(bitbucket.iteratePullRequests(any(BitbucketNameQuery.class)))
+                    .thenReturn(pagedIterable(Collections.<BitbucketPullRequestValue>emptyList()));
         }
 
         // mock file exists
@@ -85,6 +102,10 @@ public class BitbucketClientMockUtils {
         // Team discovering mocks
         when(bitbucket.getTeam()).thenReturn(getTeam());
         when(bitbucket.getRepositories()).thenReturn(getRepositories(type));
+        when(bitbucket.getRepositories(any(UserRoleInRepository.class), any(BitbucketNameQuery.class)))
+                .thenReturn(getRepositories(type));
+        when(bitbucket.getRepositoriesChangedSince(any(UserRoleInRepository.class), anyLong()))
+                .thenReturn(getRepositories(type));
 
         // Auto-registering hooks
         if (includeWebHooks) {
@@ -102,6 +123,26 @@ public class BitbucketClientMockUtils {
         return getAPIClientMock(type, includePullRequests, false);
     }
 
+    static <V> BitbucketPagedIterable<V> pagedIterable(final List<V> values) {
+        return new BitbucketPagedIterable<V>() {
+            @Override
+            protected Pages<V> pages() {
+                return new Pages<V>() {
+                    private boolean fetched;
+
+                    @Override
+                    public List<V> nextPage() {
+                        if (fetched) {
+                            return null;
+                        }
+                        fetched = true;
+                        return values;
+                    }
+                };
+            }
+        };
+    }
+
     private static List<BitbucketRepositoryHook> getWebHooks() {
         BitbucketRepositoryHook hook = new BitbucketRepositoryHook();
         hook.setUrl(Jenkins.getActiveInstance().getRootUrl() + BitbucketSCMSourcePushHookReceiver.FULL_PATH);
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketScanSnapshotTest {
+
+    private static final BranchSCMHead MASTER = new BranchSCMHead("master");
+
+    private static final BranchSCMHead FEATURE = new BranchSCMHead("feature");
+
+    private static final BranchSCMHead DELETED = new BranchSCMHead("deleted");
+
+    @Test
+    public void unchangedHeadReplaysPreviousAnswers() {
+        BitbucketScanSnapshot first = new BitbucketScanSnapshot().nextScan();
+        BitbucketScanSnapshot.Head master = first.head(MASTER, "aaaa");
+        master.setExists("Jenkinsfile", true);
+        master.setLastModified(42L);
+        first.finish(true);
+
+        BitbucketScanSnapshot second = first.nextScan();
+        BitbucketScanSnapshot.Head replayed = second.head(MASTER, "aaaa");
+        assertThat(replayed.getExists("Jenkinsfile"), is(true));
+        assertThat(replayed.getExists("pom.xml"), is(nullValue()));
+        assertThat(replayed.getLastModified(), is(42L));
+        assertThat(second.head(MASTER, "aaaa"), sameInstance(replayed));
+    }
+
+    @Test
+    public void movedHeadStartsAfresh() {
+        BitbucketScanSnapshot first = new BitbucketScanSnapshot().nextScan();
+        first.head(MASTER, "aaaa").setExists("Jenkinsfile", true);
+        first.finish(true);
+
+        BitbucketScanSnapshot second = first.nextScan();
+        BitbucketScanSnapshot.Head moved = second.head(MASTER, "bbbb");
+        assertThat(moved.getHash(), is("bbbb"));
+        assertThat(moved.getExists("Jenkinsfile"), is(nullValue()));
+        assertThat(moved.getLastModified(), is(nullValue()));
+    }
+
+    @Test
+    public void completeScanForgetsUnseenHeads() {
+        BitbucketScanSnapshot first = new BitbucketScanSnapshot().nextScan();
+        first.head(MASTER, "aaaa");
+        first.head(DELETED, "cccc");
+        first.finish(true);
+
+        BitbucketScanSnapshot second = first.nextScan();
+        second.head(MASTER, "aaaa");
+        second.finish(true);
+        assertThat(second.size(), is(1));
+    }
+
+    @Test
+    public void partialScanKeepsUnseenHeads() {
+        BitbucketScanSnapshot first = new BitbucketScanSnapshot().nextScan();
+        first.head(MASTER, "aaaa");
+        first.head(FEATURE, "cccc").setExists("Jenkinsfile", false);
+        first.finish(true);
+
+        BitbucketScanSnapshot second = first.nextScan();
+        second.head(MASTER, "bbbb");
+        second.finish(false);
+        assertThat(second.size(), is(2));
+
+        BitbucketScanSnapshot third = second.nextScan();
+        assertThat(third.head(FEATURE, "cccc").getExists("Jenkinsfile"), is(false));
+        assertThat(third.head(MASTER, "bbbb"), not(sameInstance(first.head(MASTER, "aaaa"))));
+    }
+
+    @Test
+    public void branchAndPullRequestOfTheSameNameAreKeptApart() {
+        BranchSCMHead branch = new BranchSCMHead("PR-1");
+        PullRequestSCMHead pullRequest = new PullRequestSCMHead("PR-1", "owner", "repo", "feature", "1", MASTER,
+                null, ChangeRequestCheckoutStrategy.HEAD);
+        BitbucketScanSnapshot first = new BitbucketScanSnapshot().nextScan();
+        first.head(branch, "aaaa").setExists("Jenkinsfile", true);
+        first.head(pullRequest, "aaaa").setExists("Jenkinsfile", false);
+        first.finish(true);
+        assertThat(first.size(), is(2));
+
+        BitbucketScanSnapshot second = first.nextScan();
+        assertThat(second.head(branch, "aaaa").getExists("Jenkinsfile"), is(true));
+        assertThat(second.head(pullRequest, "aaaa").getExists("Jenkinsfile"), is(false));
+    }
+}
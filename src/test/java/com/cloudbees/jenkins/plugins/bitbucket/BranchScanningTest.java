@@ -25,7 +25,17 @@ package com.cloudbees.jenkins.plugins.bitbucket;
 
 import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepositoryType;
 import com.cloudbees.jenkins.plugins.bitbucket.client.BitbucketCloudApiClient;
+import com.cloudbees.jenkins.plugins.bitbucket.client.branch.BitbucketCloudBranch;
+import com.cloudbees.jenkins.plugins.bitbucket.client.branch.BitbucketCloudCommit;
+import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullRequestValue;
+import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullRequestValueDestination;
+import com.cloudbees.jenkins.plugins.bitbucket.client.pullrequest.BitbucketPullRequestValueRepository;
+import com.cloudbees.jenkins.plugins.bitbucket.client.repository.BitbucketCloudRepository;
 import com.cloudbees.jenkins.plugins.bitbucket.endpoints.BitbucketCloudEndpoint;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerAPIClient;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.branch.BitbucketServerBranch;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequest;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.pullrequest.BitbucketServerPullRequestSource;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
@@ -38,12 +48,14 @@ import java.util.EnumSet;
 import java.util.List;
 import jenkins.plugins.git.AbstractGitSCMSource.SCMRevisionImpl;
 import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadOrigin;
 import jenkins.scm.api.SCMHeadObserver;
 import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceCriteria;
 import jenkins.scm.api.SCMSourceOwner;
 import jenkins.scm.api.mixin.ChangeRequestCheckoutStrategy;
+import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -51,11 +63,13 @@ import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BranchScanningTest {
@@ -109,6 +123,34 @@ public class BranchScanningTest {
 
     }
 
+    @Test
+    public void retrieveClosedPullRequestTest() throws Exception {
+        BitbucketServerAPIClient mock = mock(BitbucketServerAPIClient.class);
+        when(mock.getBranch("master"))
+                .thenReturn(new BitbucketServerBranch("master", "52fc8e220d77ec400f7fc96a91d2fd0bb1bc553a"));
+        BitbucketServerPullRequestSource prSource = new BitbucketServerPullRequestSource();
+        prSource.setBranchName("feature");
+        prSource.setLatestCommit("707c59ce8292c927dddb6807fcf9c3c5e7c9b00f");
+        BitbucketServerPullRequest pr = new BitbucketServerPullRequest();
+        pr.setId("1");
+        pr.setSource(prSource);
+        pr.setState("MERGED");
+        when(mock.getPullRequestById(1)).thenReturn(pr);
+        BitbucketMockApiFactory.add("https://bitbucket.test", mock);
+        BitbucketSCMSource source = new BitbucketSCMSource("amuniz", "test-repos");
+        source.setServerUrl("https://bitbucket.test");
+        source.setOwner(getSCMSourceOwnerMock());
+
+        PullRequestSCMHead head = new PullRequestSCMHead("PR-1", "amuniz", "test-repos", "feature", "1",
+                new BranchSCMHead("master", BitbucketRepositoryType.GIT), SCMHeadOrigin.DEFAULT,
+                ChangeRequestCheckoutStrategy.HEAD);
+        SCMRevision rev = source.retrieve(head, BitbucketClientMockUtils.getTaskListenerMock());
+
+        // the lookup by id found the pull request, but a merged pull request has no live revision
+        verify(mock).getPullRequestById(1);
+        assertThat(rev, nullValue());
+    }
+
     @Test
     public void scanTest() throws Exception {
         BitbucketMockApiFactory.add(BitbucketCloudEndpoint.SERVER_URL,
@@ -136,6 +178,44 @@ public class BranchScanningTest {
         assertEquals("PR-23", observer.getBranches().get(1));
     }
 
+    @Test
+    public void scanTestPullRequestIntoExcludedTarget() throws Exception {
+        BitbucketCloudApiClient mock = BitbucketClientMockUtils.getAPIClientMock(BitbucketRepositoryType.GIT, false);
+        BitbucketPullRequestValue pr = new BitbucketPullRequestValue();
+        BitbucketPullRequestValueRepository source = new BitbucketPullRequestValueRepository();
+        source.setBranch(new BitbucketCloudBranch("branch1", null, 0));
+        BitbucketCloudCommit commit = new BitbucketCloudCommit();
+        commit.setHash("52fc8e220d77ec400f7fc96a91d2fd0bb1bc553a");
+        source.setCommit(commit);
+        BitbucketCloudRepository repository = new BitbucketCloudRepository();
+        repository.setFullName("amuniz/test-repos");
+        source.setRepository(repository);
+        pr.setSource(source);
+        BitbucketPullRequestValueDestination destination = new BitbucketPullRequestValueDestination();
+        destination.setBranch(new BitbucketCloudBranch("develop", null, 0));
+        destination.setRepository(repository);
+        pr.setDestination(destination);
+        pr.setId("24");
+        pr.setAuthor(new BitbucketPullRequestValue.Author("amuniz"));
+        pr.setLinks(new BitbucketPullRequestValue.Links("https://bitbucket.org/amuniz/test-repos/pull-requests/24"));
+        // the pull request targets a branch outside of the includes, a listing narrowed to them does not return it
+        when(mock.getPullRequests()).thenReturn(Arrays.asList(pr));
+        when(mock.iteratePullRequests()).thenReturn(BitbucketClientMockUtils.pagedIterable(Arrays.asList(pr)));
+        BitbucketMockApiFactory.add(BitbucketCloudEndpoint.SERVER_URL, mock);
+
+        BitbucketSCMSource scmSource = new BitbucketSCMSource("amuniz", "test-repos");
+        scmSource.setTraits(Arrays.asList(
+                new BranchDiscoveryTrait(true, false),
+                new WildcardSCMHeadFilterTrait("branch1 branch2", "")
+        ));
+        scmSource.setOwner(getSCMSourceOwnerMock());
+        SCMHeadObserverImpl observer = new SCMHeadObserverImpl();
+        scmSource.fetch(observer, BitbucketClientMockUtils.getTaskListenerMock());
+
+        // branch1 is filed as a pull request so it must not be observed
+        assertThat(observer.getBranches(), Matchers.<String>empty());
+    }
+
     @Test
     public void gitSCMTest() throws Exception {
         BitbucketMockApiFactory.add(BitbucketCloudEndpoint.SERVER_URL,
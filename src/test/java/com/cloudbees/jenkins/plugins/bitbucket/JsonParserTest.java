@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.BitbucketServerPage;
+import com.cloudbees.jenkins.plugins.bitbucket.server.client.branch.BitbucketServerBranch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class JsonParserTest {
+
+    private static final TypeReference<BitbucketServerPage<BitbucketServerBranch>> BRANCH_PAGE =
+            new TypeReference<BitbucketServerPage<BitbucketServerBranch>>(){};
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final int ROUNDS = 20;
+
+    private static byte[] branchPage() {
+        StringBuilder json = new StringBuilder("{\"size\":").append(PAGE_SIZE)
+                .append(",\"limit\":").append(PAGE_SIZE)
+                .append(",\"start\":0,\"isLastPage\":true,\"values\":[");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"refs/heads/feature/branch-").append(i)
+                    .append("\",\"displayId\":\"feature/branch-").append(i)
+                    .append("\",\"latestCommit\":\"").append(String.format("%040x", i))
+                    .append("\",\"isDefault\":false}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void given__stream__when__toJava__then__decoded() throws Exception {
+        BitbucketServerPage<BitbucketServerBranch> page =
+                JsonParser.toJava(new ByteArrayInputStream(branchPage()), BRANCH_PAGE);
+        assertThat(page.getValues().size(), is(PAGE_SIZE));
+        assertThat(page.getValues().get(42).getName(), is("feature/branch-42"));
+        assertThat(page.getValues().get(42).getRawNode(), is(String.format("%040x", 42)));
+        assertThat(page.isLastPage(), is(true));
+    }
+
+    @Test
+    public void given__largePage__when__decodedFromStream__then__allocatesLessThanBuffering() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        byte[] body = branchPage();
+
+        // warm up both paths so that class loading and Jackson's deserializer cache do not skew the figures
+        for (int i = 0; i < 5; i++) {
+            buffered(body);
+            streamed(body);
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ROUNDS; i++) {
+            buffered(body);
+        }
+        long bufferedBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ROUNDS; i++) {
+            streamed(body);
+        }
+        long streamedBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+        assertThat(streamedBytes, lessThan(bufferedBytes));
+    }
+
+    /**
+     * What the clients used to do: copy the body into a buffer, decode it into a {@link String}, then parse that.
+     */
+    private static int buffered(byte[] body) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(body.length);
+        try (InputStream is = new ByteArrayInputStream(body)) {
+            IOUtils.copy(is, buf);
+        }
+        String content = new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        BitbucketServerPage<BitbucketServerBranch> page = JsonParser.mapper.readValue(content, BRANCH_PAGE);
+        return page.getValues().size();
+    }
+
+    private static int streamed(byte[] body) throws IOException {
+        try (InputStream is = new ByteArrayInputStream(body)) {
+            return JsonParser.toJava(is, BRANCH_PAGE).getValues().size();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketNameQuery.Term;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import jenkins.scm.api.trait.SCMSourceTrait;
+import jenkins.scm.api.trait.SCMTrait;
+import jenkins.scm.impl.trait.RegexSCMHeadFilterTrait;
+import jenkins.scm.impl.trait.RegexSCMSourceFilterTrait;
+import jenkins.scm.impl.trait.WildcardSCMHeadFilterTrait;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class NameQueryPushdownTest {
+
+    @Test
+    public void wildcards() {
+        assertThat(NameQueryPushdown.fromWildcards("master release/* *-stable"), contains(
+                Term.equalTo("master"), Term.contains("release/"), Term.contains("-stable")
+        ));
+        assertThat(NameQueryPushdown.fromWildcards("feature/*/ui"), contains(Term.contains("feature/")));
+    }
+
+    @Test
+    public void wildcardsMatchingEverything() {
+        assertThat(NameQueryPushdown.fromWildcards("*"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromWildcards("master *"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromWildcards(""), is(nullValue()));
+    }
+
+    @Test
+    public void regex() {
+        assertThat(NameQueryPushdown.fromRegex("^(master|release-.*)$"), contains(
+                Term.equalTo("master"), Term.contains("release-")
+        ));
+        assertThat(NameQueryPushdown.fromRegex("v1\\.0"), contains(Term.equalTo("v1.0")));
+    }
+
+    @Test
+    public void regexNotTranslated() {
+        assertThat(NameQueryPushdown.fromRegex(".*"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromRegex("release-\\d+"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromRegex("(master|dev)-(a|b)"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromRegex("master|"), is(nullValue()));
+        assertThat(NameQueryPushdown.fromRegex("ma[s]ter"), is(nullValue()));
+    }
+
+    @Test
+    public void branches() {
+        BitbucketNameQuery query = NameQueryPushdown.forBranches(
+                Arrays.<SCMSourceTrait>asList(
+                        new WildcardSCMHeadFilterTrait("master feature/*", "feature/wip* legacy"),
+                        new RegexSCMHeadFilterTrait(".*")
+                ),
+                new LinkedHashSet<>(Arrays.asList("master", "feature/a")));
+        assertThat(query.getClauses(), contains(
+                Arrays.asList(Term.equalTo("master"), Term.equalTo("feature/a")),
+                Arrays.asList(Term.equalTo("master"), Term.contains("feature/")),
+                Collections.singletonList(Term.notEqualTo("legacy"))
+        ));
+    }
+
+    @Test
+    public void pullRequestTargets() {
+        BitbucketNameQuery query = NameQueryPushdown.forPullRequestTargets(Arrays.<SCMSourceTrait>asList(
+                new WildcardSCMHeadFilterTrait("master feature/*", "legacy"),
+                new RegexSCMHeadFilterTrait("master|develop")
+        ));
+        assertThat(query.getClauses(), contains(
+                Arrays.asList(Term.equalTo("master"), Term.equalTo("develop"))
+        ));
+    }
+
+    @Test
+    public void pullRequestTargetsWithBranchesToldApartByPullRequests() {
+        assertThat(NameQueryPushdown.forPullRequestTargets(Arrays.<SCMSourceTrait>asList(
+                new BranchDiscoveryTrait(true, false),
+                new WildcardSCMHeadFilterTrait("master feature-x", "")
+        )).isMatchAll(), is(true));
+        assertThat(NameQueryPushdown.forPullRequestTargets(Arrays.<SCMSourceTrait>asList(
+                new BranchDiscoveryTrait(false, true),
+                new WildcardSCMHeadFilterTrait("master feature-x", "")
+        )).isMatchAll(), is(true));
+        assertThat(NameQueryPushdown.forPullRequestTargets(Arrays.<SCMSourceTrait>asList(
+                new BranchDiscoveryTrait(true, true),
+                new WildcardSCMHeadFilterTrait("master feature-x", "")
+        )).getClauses(), contains(
+                Arrays.asList(Term.equalTo("master"), Term.equalTo("feature-x"))
+        ));
+    }
+
+    @Test
+    public void repositories() {
+        BitbucketNameQuery query = NameQueryPushdown.forRepositories(Arrays.<SCMTrait<?>>asList(
+                new RegexSCMSourceFilterTrait("(api|web-.*)"),
+                new BranchDiscoveryTrait(true, false)
+        ));
+        assertThat(query.getClauses(), contains(
+                Arrays.asList(Term.equalTo("api"), Term.contains("web-"))
+        ));
+        assertThat(NameQueryPushdown.forRepositories(Collections.<SCMTrait<?>>singletonList(
+                new RegexSCMSourceFilterTrait(".*"))).isMatchAll(), is(true));
+    }
+
+    @Test
+    public void branchesWithoutFilters() {
+        assertThat(NameQueryPushdown.forBranches(Collections.<SCMSourceTrait>emptyList(), null).isMatchAll(),
+                is(true));
+        assertThat(NameQueryPushdown.forBranches(Collections.<SCMSourceTrait>emptyList(),
+                Collections.<String>emptySet()).isMatchAll(), is(true));
+    }
+}
@@ -24,6 +24,8 @@
 package com.cloudbees.jenkins.plugins.bitbucket.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -33,7 +35,13 @@ import static org.mockito.Mockito.when;
 import org.junit.Test;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CacheTest {
 
@@ -64,6 +72,24 @@ public class CacheTest {
         verifyNoMoreInteractions(callable);
     }
 
+    @Test
+    public void ensure_expiration_after_access_works() throws Exception {
+        final Cache<String, Long> cache = new Cache<String, Long>(1, TimeUnit.SECONDS).expireAfterAccess();
+        final Callable<Long> callable = mock(Callable.class);
+        when(callable.call()).thenReturn(1L);
+
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+        Thread.sleep(600);
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+        Thread.sleep(600);
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+        Thread.sleep(1200);
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+
+        verify(callable, times(2)).call();
+        verifyNoMoreInteractions(callable);
+    }
+
     @Test
     public void ensure_max_entries_works() throws Exception {
         final Cache<String, Long> cache = new Cache<>(1, TimeUnit.NANOSECONDS, 10);
@@ -78,4 +104,144 @@ public class CacheTest {
         cache.get("another key", callable);
         assertEquals(10, cache.size());
     }
+
+    @Test
+    public void ensure_least_recently_used_is_evicted() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(5, TimeUnit.HOURS, 2);
+        final Callable<Long> callable = mock(Callable.class);
+        when(callable.call()).thenReturn(1L);
+
+        cache.get("a", callable);
+        cache.get("b", callable);
+        cache.get("a", callable);
+        cache.get("c", callable);
+        verify(callable, times(3)).call();
+
+        // "b" was the least recently used, "a" survives
+        cache.get("a", callable);
+        verify(callable, times(3)).call();
+        cache.get("b", callable);
+        verify(callable, times(4)).call();
+        assertEquals(2L, cache.getEvictionCount());
+    }
+
+    @Test
+    public void ensure_slow_load_does_not_block_other_keys() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(5, TimeUnit.HOURS);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> slow = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return cache.get("slow", new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            loading.countDown();
+                            release.await();
+                            return 1L;
+                        }
+                    });
+                }
+            });
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(2L), cache.get("fast", new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return 2L;
+                }
+            }));
+            release.countDown();
+            assertEquals(Long.valueOf(1L), slow.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ensure_weight_bound_works() throws Exception {
+        final Cache<String, String> cache = new Cache<>(5, TimeUnit.HOURS, 100, 10,
+                new Cache.Weigher<String, String>() {
+                    @Override
+                    public int weigh(String key, String value) {
+                        return value.length();
+                    }
+                });
+        cache.get("a", constant("12345"));
+        cache.get("b", constant("12345"));
+        assertEquals(10L, cache.getWeight());
+        cache.get("c", constant("123"));
+        assertEquals(2, cache.size());
+        assertEquals(8L, cache.getWeight());
+    }
+
+    @Test
+    public void ensure_stale_value_is_served_while_revalidating() throws Exception {
+        final Cache<String, Long> cache = new Cache<String, Long>(1, TimeUnit.NANOSECONDS)
+                .staleWhileRevalidate(1, TimeUnit.HOURS);
+        final AtomicLong counter = new AtomicLong();
+        final Callable<Long> callable = new Callable<Long>() {
+            @Override
+            public Long call() {
+                return counter.incrementAndGet();
+            }
+        };
+
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+        Thread.sleep(10);
+        // the stale value is served at once and reloaded in the background
+        assertEquals(Long.valueOf(1L), cache.get("a key", callable));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.getLoadSuccessCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2L, cache.getLoadSuccessCount());
+        Thread.sleep(10);
+        assertEquals(Long.valueOf(2L), cache.get("a key", callable));
+    }
+
+    @Test
+    public void ensure_failed_load_is_not_cached() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(5, TimeUnit.HOURS);
+        try {
+            cache.get("a key", new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    throw new IllegalStateException("boom");
+                }
+            });
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(Long.valueOf(1L), cache.get("a key", constant(1L)));
+        assertEquals(1L, cache.getLoadFailureCount());
+        assertEquals(2L, cache.getMissCount());
+        cache.get("a key", constant(1L));
+        assertEquals(1L, cache.getHitCount());
+    }
+
+    @Test
+    public void ensure_put_value_is_present() throws Exception {
+        final Cache<String, Long> cache = new Cache<>(Integer.MAX_VALUE, TimeUnit.DAYS, 2);
+        assertEquals(null, cache.getIfPresent("a"));
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        assertEquals(Long.valueOf(1L), cache.getIfPresent("a"));
+        cache.put("c", 3L);
+        assertEquals(null, cache.getIfPresent("b"));
+        assertEquals(Long.valueOf(1L), cache.get("a", constant(4L)));
+        assertEquals(2, cache.size());
+    }
+
+    private static <V> Callable<V> constant(final V value) {
+        return new Callable<V>() {
+            @Override
+            public V call() {
+                return value;
+            }
+        };
+    }
 }
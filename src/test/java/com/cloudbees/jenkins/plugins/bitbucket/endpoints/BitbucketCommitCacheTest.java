@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketCommit;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class BitbucketCommitCacheTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+    private static final Credentials ALICE = new UsernamePasswordCredentials("alice", "secret");
+
+    private static final Credentials BOB = new UsernamePasswordCredentials("bob", "secret");
+
+    private BitbucketCommitCache instance;
+
+    @Before
+    public void setUp() {
+        instance = new BitbucketCommitCache();
+    }
+
+    @After
+    public void tearDown() {
+        instance.clear();
+    }
+
+    @Test
+    public void given__resolvedCommit__when__getCachedCommit__then__cached() {
+        BitbucketCommit commit = mock(BitbucketCommit.class);
+        assertThat(instance.getCachedCommit(ALICE, "owner", "repo", HASH), nullValue());
+        instance.cacheCommit(ALICE, "owner", "repo", HASH, commit);
+        assertThat(instance.getCachedCommit(ALICE, "owner", "repo", HASH), sameInstance(commit));
+        assertThat(instance.getCachedCommit(ALICE, "Owner", "Repo", HASH.toUpperCase()), sameInstance(commit));
+        assertThat(instance.getCachedCommit(ALICE, "owner", "other", HASH), nullValue());
+    }
+
+    @Test
+    public void given__branchName__when__cacheCommit__then__notCached() {
+        instance.cacheCommit(ALICE, "owner", "repo", "master", mock(BitbucketCommit.class));
+        assertThat(instance.getCachedCommit(ALICE, "owner", "repo", "master"), nullValue());
+    }
+
+    @Test
+    public void given__probedPaths__when__getCachedPathExists__then__bothOutcomesCached() {
+        assertThat(instance.getCachedPathExists(ALICE, "owner", "repo", HASH, "Jenkinsfile"), nullValue());
+        instance.cachePathExists(ALICE, "owner", "repo", HASH, "Jenkinsfile", true);
+        instance.cachePathExists(ALICE, "owner", "repo", HASH, "pom.xml", false);
+        assertThat(instance.getCachedPathExists(ALICE, "owner", "repo", HASH, "Jenkinsfile"), is(true));
+        assertThat(instance.getCachedPathExists(ALICE, "owner", "repo", HASH, "pom.xml"), is(false));
+        assertThat(instance.getCachedPathExists(ALICE, "owner", "repo", HASH, "build.gradle"), nullValue());
+    }
+
+    @Test
+    public void given__branchName__when__cachePathExists__then__notCached() {
+        instance.cachePathExists(ALICE, "owner", "repo", "master", "Jenkinsfile", true);
+        assertThat(instance.getCachedPathExists(ALICE, "owner", "repo", "master", "Jenkinsfile"), nullValue());
+    }
+
+    @Test
+    public void given__resolvedPullRequestHash__when__getCachedPullRequestHash__then__cached() {
+        instance.cachePullRequestHash(ALICE, "owner", "repo", "1", "0123456789ab", HASH);
+        assertThat(instance.getCachedPullRequestHash(ALICE, "owner", "repo", "1", "0123456789ab"), is(HASH));
+        assertThat(instance.getCachedPullRequestHash(ALICE, "owner", "repo", "2", "0123456789ab"), nullValue());
+        assertThat(instance.getCachedPullRequestHash(ALICE, "owner", "repo", "1", "fedcba987654"), nullValue());
+    }
+
+    @Test
+    public void given__mismatchedHash__when__cachePullRequestHash__then__notCached() {
+        instance.cachePullRequestHash(ALICE, "owner", "repo", "1", "fedcba987654", HASH);
+        instance.cachePullRequestHash(ALICE, "owner", "repo", "2", "0123456789ab", "0123456789ab");
+        assertThat(instance.getCachedPullRequestHash(ALICE, "owner", "repo", "1", "fedcba987654"), nullValue());
+        assertThat(instance.getCachedPullRequestHash(ALICE, "owner", "repo", "2", "0123456789ab"), nullValue());
+    }
+
+    @Test
+    public void given__cachedAnswers__when__otherCredentials__then__notShared() {
+        BitbucketCommit commit = mock(BitbucketCommit.class);
+        instance.cacheCommit(ALICE, "owner", "repo", HASH, commit);
+        instance.cachePathExists(ALICE, "owner", "repo", HASH, "Jenkinsfile", true);
+        instance.cachePullRequestHash(ALICE, "owner", "repo", "1", "0123456789ab", HASH);
+        assertThat(instance.getCachedCommit(BOB, "owner", "repo", HASH), nullValue());
+        assertThat(instance.getCachedCommit(null, "owner", "repo", HASH), nullValue());
+        assertThat(instance.getCachedPathExists(BOB, "owner", "repo", HASH, "Jenkinsfile"), nullValue());
+        assertThat(instance.getCachedPullRequestHash(BOB, "owner", "repo", "1", "0123456789ab"), nullValue());
+        assertThat(instance.getCachedCommit(ALICE, "owner", "repo", HASH), sameInstance(commit));
+    }
+}
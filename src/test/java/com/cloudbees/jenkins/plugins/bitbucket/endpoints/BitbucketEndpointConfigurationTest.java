@@ -28,6 +28,7 @@ import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.domains.Domain;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.ProxyConfiguration;
 import hudson.XmlFile;
 import hudson.security.ACL;
 import hudson.security.AuthorizationStrategy;
@@ -41,6 +42,7 @@ import jenkins.model.Jenkins;
 import org.acegisecurity.AccessDeniedException;
 import org.acegisecurity.context.SecurityContext;
 import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.http.HttpHost;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -129,6 +131,50 @@ public class BitbucketEndpointConfigurationTest {
         assertThat(instance.getEndpoints().get(0).getCredentialsId(), is("dummy"));
     }
 
+    @Test
+    public void given__newInstance__when__configuredWithPoolSettings__then__httpClientSized() {
+        BitbucketEndpointConfiguration instance = new BitbucketEndpointConfiguration();
+        BitbucketServerEndpoint endpoint =
+                new BitbucketServerEndpoint("Example Inc", "https://bitbucket.example.com/", false, null);
+        endpoint.setMaxConnections(50);
+        endpoint.setMaxConnectionsPerRoute(40);
+        instance.setEndpoints(Collections.<AbstractBitbucketEndpoint>singletonList(endpoint));
+        assertThat(instance.getExistingHttpClient("https://bitbucket.example.com"), nullValue());
+        BitbucketEndpointHttpClient client = instance.getHttpClient("https://bitbucket.example.com");
+        assertThat(client.getPoolStats().getMax(), is(50));
+        assertThat(client.getConnectionManager().getDefaultMaxPerRoute(), is(40));
+        assertThat(instance.getExistingHttpClient("https://bitbucket.example.com"), is(client));
+
+        endpoint = new BitbucketServerEndpoint("Example Inc", "https://bitbucket.example.com/", false, null);
+        endpoint.setMaxConnections(10);
+        endpoint.setMaxConnectionsPerRoute(40);
+        instance.setEndpoints(Collections.<AbstractBitbucketEndpoint>singletonList(endpoint));
+        assertThat(instance.getHttpClient("https://bitbucket.example.com"), is(client));
+        assertThat(client.getPoolStats().getMax(), is(10));
+        assertThat(client.getConnectionManager().getDefaultMaxPerRoute(), is(10));
+
+        instance.setEndpoints(Collections.<AbstractBitbucketEndpoint>emptyList());
+        assertThat(instance.getExistingHttpClient("https://bitbucket.example.com"), nullValue());
+    }
+
+    @Test
+    public void given__proxyChanged__when__newContext__then__currentProxyUsed() {
+        BitbucketEndpointConfiguration instance = new BitbucketEndpointConfiguration();
+        BitbucketEndpointHttpClient client = instance.getHttpClient("https://bitbucket.example.com");
+        HttpHost target = HttpHost.create("https://bitbucket.example.com");
+        try {
+            j.jenkins.proxy = null;
+            assertThat(client.newContext(null, target).getRequestConfig().getProxy(), nullValue());
+            j.jenkins.proxy = new ProxyConfiguration("proxy.example.com", 3128);
+            assertThat(client.newContext(null, target).getRequestConfig().getProxy(),
+                    is(new HttpHost("proxy.example.com", 3128)));
+            j.jenkins.proxy = new ProxyConfiguration("proxy.example.com", 3128, null, null, "*.example.com");
+            assertThat(client.newContext(null, target).getRequestConfig().getProxy(), nullValue());
+        } finally {
+            j.jenkins.proxy = null;
+        }
+    }
+
     @Test
     public void given__newInstance__when__configuredWithServer__then__serverPresent() {
         BitbucketEndpointConfiguration instance = new BitbucketEndpointConfiguration();
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketRateLimiterTest {
+
+    @Test
+    public void given__noAdvertisedLimit__when__acquire__then__noDelay() throws Exception {
+        BitbucketRateLimiter limiter = new BitbucketRateLimiter();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire("owner/repo");
+        }
+        assertThat(System.nanoTime() - start, lessThan(1000000000L));
+    }
+
+    @Test
+    public void given__advertisedFillRate__when__bucketEmpty__then__paced() throws Exception {
+        BitbucketRateLimiter limiter = new BitbucketRateLimiter();
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader(new BasicHeader("X-RateLimit-Limit", "10"));
+        response.addHeader(new BasicHeader("X-RateLimit-FillRate", "5"));
+        response.addHeader(new BasicHeader("X-RateLimit-Interval-Seconds", "1"));
+        response.addHeader(new BasicHeader("X-RateLimit-Remaining", "0"));
+        limiter.update(response);
+        long start = System.nanoTime();
+        limiter.acquire("owner/repo");
+        limiter.acquire("owner/other");
+        // two tokens at five tokens per second
+        assertThat((System.nanoTime() - start) / 1000000L, greaterThanOrEqualTo(350L));
+    }
+
+    @Test
+    public void given__retryAfter__when__rateLimited__then__serverDelayHonoured() throws Exception {
+        BitbucketRateLimiter limiter = new BitbucketRateLimiter();
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        response.addHeader(new BasicHeader("Retry-After", "1"));
+        long delay = limiter.rateLimited(response, 1);
+        assertThat(delay, allOf(greaterThanOrEqualTo(900L), lessThanOrEqualTo(1000L)));
+        long start = System.nanoTime();
+        limiter.acquire("owner/repo");
+        assertThat((System.nanoTime() - start) / 1000000L, greaterThanOrEqualTo(800L));
+    }
+
+    @Test
+    public void given__enteredLane__when__taskHandedOver__then__laneFollowsTask() throws Exception {
+        assertThat(BitbucketRateLimiter.currentLane(), is(""));
+        Callable<String> task;
+        try (BitbucketRateLimiter.LaneScope scope = BitbucketRateLimiter.enterLane("folder/job")) {
+            assertThat(BitbucketRateLimiter.currentLane(), is("folder/job"));
+            task = BitbucketRateLimiter.inCurrentLane(new Callable<String>() {
+                @Override
+                public String call() {
+                    return BitbucketRateLimiter.currentLane();
+                }
+            });
+        }
+        assertThat(BitbucketRateLimiter.currentLane(), is(""));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(executor.submit(task).get(), is("folder/job"));
+            assertThat(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return BitbucketRateLimiter.currentLane();
+                }
+            }).get(), is(""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void given__attempts__when__backoff__then__exponentialAndBounded() {
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long max = Math.min(BitbucketRateLimiter.INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1, 16),
+                    BitbucketRateLimiter.MAX_BACKOFF_MILLIS);
+            assertThat(BitbucketRateLimiter.backoff(attempt), allOf(greaterThanOrEqualTo(max / 2),
+                    lessThanOrEqualTo(max)));
+        }
+    }
+
+    @Test
+    public void given__retryAfterDate__when__parsed__then__delayComputed() {
+        assertThat(BitbucketRateLimiter.parseRetryAfter(new BasicHeader("Retry-After", "120")), is(120000L));
+        assertThat(BitbucketRateLimiter.parseRetryAfter(new BasicHeader("Retry-After", "garbage")), is(-1L));
+        assertThat(BitbucketRateLimiter.parseRetryAfter(
+                new BasicHeader("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT")), is(0L));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BitbucketRequestCoalescerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void given__requestInFlight__when__identicalRequest__then__resultShared() throws Exception {
+        final BitbucketRequestCoalescer coalescer = new BitbucketRequestCoalescer();
+        final String key = BitbucketRequestCoalescer.keyOf(new UsernamePasswordCredentials("alice", "secret"), "url");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<Object> request = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+        List<Future<Object>> results = new ArrayList<>();
+        results.add(executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return coalescer.execute(key, request);
+            }
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return coalescer.execute(key, request);
+                }
+            }));
+        }
+        while (coalescer.getCoalescedCount() < 3) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        Object first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS), sameInstance(first));
+        }
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void given__completedRequest__when__identicalRequest__then__performedAgain() throws Exception {
+        BitbucketRequestCoalescer coalescer = new BitbucketRequestCoalescer();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> request = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        assertThat(coalescer.execute("key", request), is(1));
+        assertThat(coalescer.execute("key", request), is(2));
+    }
+
+    @Test
+    public void given__differentCredentials__when__keyOf__then__distinct() {
+        assertThat(BitbucketRequestCoalescer.keyOf(new UsernamePasswordCredentials("alice", "secret"), "url"),
+                not(BitbucketRequestCoalescer.keyOf(new UsernamePasswordCredentials("bob", "secret"), "url")));
+    }
+
+    @Test
+    public void given__failingRequest__when__execute__then__exceptionRethrown() throws Exception {
+        BitbucketRequestCoalescer coalescer = new BitbucketRequestCoalescer();
+        try {
+            coalescer.execute("key", new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    throw new FileNotFoundException("url");
+                }
+            });
+            fail("expected FileNotFoundException");
+        } catch (FileNotFoundException e) {
+            assertThat(e.getMessage(), is("url"));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.endpoints;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketResponseCacheTest {
+
+    private static final UsernamePasswordCredentials ALICE = new UsernamePasswordCredentials("alice", "secret");
+
+    private static final UsernamePasswordCredentials BOB = new UsernamePasswordCredentials("bob", "secret");
+
+    private static final String URL = "https://api.bitbucket.org/2.0/repositories/owner/repo/refs/branches";
+
+    private static CloseableHttpResponse response(int status, String etag, String body) {
+        TestResponse response = new TestResponse(status);
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+        if (body != null) {
+            response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        }
+        return response;
+    }
+
+    @Test
+    public void given__cachedResponse__when__notModified__then__servedFromCache() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache();
+        HttpGet first = new HttpGet(URL);
+        assertThat(cache.prepare(ALICE, first), nullValue());
+        CloseableHttpResponse response = cache.complete(ALICE, first, null, response(200, "\"v1\"", "{\"values\":[]}"));
+        assertThat(EntityUtils.toString(response.getEntity()), is("{\"values\":[]}"));
+
+        HttpGet second = new HttpGet(URL);
+        BitbucketResponseCache.Entry entry = cache.prepare(ALICE, second);
+        assertThat(entry, notNullValue());
+        assertThat(second.getFirstHeader("If-None-Match").getValue(), is("\"v1\""));
+        response = cache.complete(ALICE, second, entry, response(304, "\"v1\"", null));
+        assertThat(response.getStatusLine().getStatusCode(), is(200));
+        assertThat(EntityUtils.toString(response.getEntity()), is("{\"values\":[]}"));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void given__cachedResponse__when__otherCredentials__then__unconditional() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache();
+        HttpGet first = new HttpGet(URL);
+        EntityUtils.consume(cache.complete(ALICE, first, null, response(200, "\"v1\"", "{}")).getEntity());
+
+        HttpGet second = new HttpGet(URL);
+        assertThat(cache.prepare(BOB, second), nullValue());
+        assertThat(second.getFirstHeader("If-None-Match"), nullValue());
+    }
+
+    @Test
+    public void given__cachedResponse__when__error__then__evicted() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache();
+        EntityUtils.consume(cache.complete(ALICE, new HttpGet(URL), null, response(200, "\"v1\"", "{}")).getEntity());
+        cache.complete(ALICE, new HttpGet(URL), null, response(404, null, "{}"));
+        assertThat(cache.prepare(ALICE, new HttpGet(URL)), nullValue());
+        assertThat(cache.getSize(), is(0L));
+    }
+
+    @Test
+    public void given__noValidators__when__complete__then__notCached() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache();
+        EntityUtils.consume(cache.complete(ALICE, new HttpGet(URL), null, response(200, null, "{}")).getEntity());
+        assertThat(cache.prepare(ALICE, new HttpGet(URL)), nullValue());
+    }
+
+    @Test
+    public void given__post__when__complete__then__notCached() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache();
+        EntityUtils.consume(cache.complete(ALICE, new HttpPost(URL), null, response(200, "\"v1\"", "{}")).getEntity());
+        assertThat(cache.prepare(ALICE, new HttpGet(URL)), nullValue());
+    }
+
+    @Test
+    public void given__largeBody__when__complete__then__passedThroughUncached() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache(1024, 16);
+        String body = "{\"values\":[\"0123456789abcdef\"]}";
+        CloseableHttpResponse response = cache.complete(ALICE, new HttpGet(URL), null,
+                response(200, "\"v1\"", body));
+        assertThat(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8), is(body));
+        assertThat(cache.prepare(ALICE, new HttpGet(URL)), nullValue());
+    }
+
+    @Test
+    public void given__fullCache__when__complete__then__leastRecentlyUsedEvicted() throws Exception {
+        BitbucketResponseCache cache = new BitbucketResponseCache(4, 2);
+        EntityUtils.consume(cache.complete(ALICE, new HttpGet(URL + "/a"), null, response(200, "a", "{}")).getEntity());
+        EntityUtils.consume(cache.complete(ALICE, new HttpGet(URL + "/b"), null, response(200, "b", "{}")).getEntity());
+        // touch a so that b becomes the eldest
+        assertThat(cache.prepare(ALICE, new HttpGet(URL + "/a")), notNullValue());
+        EntityUtils.consume(cache.complete(ALICE, new HttpGet(URL + "/c"), null, response(200, "c", "{}")).getEntity());
+        assertThat(cache.prepare(ALICE, new HttpGet(URL + "/a")), notNullValue());
+        assertThat(cache.prepare(ALICE, new HttpGet(URL + "/b")), nullValue());
+        assertThat(cache.prepare(ALICE, new HttpGet(URL + "/c")), notNullValue());
+        assertThat(cache.getSize(), is(4L));
+    }
+
+    private static class TestResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        TestResponse(int status) {
+            super(HttpVersion.HTTP_1_1, status, "");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
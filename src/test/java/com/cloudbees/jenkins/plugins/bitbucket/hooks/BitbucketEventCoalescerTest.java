@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketPushEvent;
+import com.cloudbees.jenkins.plugins.bitbucket.api.BitbucketRepository;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.scm.SCM;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import org.junit.Test;
+import org.mockito.internal.stubbing.answers.Returns;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BitbucketEventCoalescerTest {
+
+    @Test
+    public void laterEventReplacesPendingOne() {
+        RecordingCoalescer coalescer = new RecordingCoalescer(60000);
+        SCMHeadEvent<?> first = mock(SCMHeadEvent.class);
+        SCMHeadEvent<?> second = mock(SCMHeadEvent.class);
+        SCMHeadEvent<?> other = mock(SCMHeadEvent.class);
+
+        coalescer.fire("repo\nbranch:master", first);
+        coalescer.fire("repo\nbranch:master", second);
+        coalescer.fire("repo\nbranch:feature", other);
+        assertThat(coalescer.getPendingCount(), is(2));
+        assertThat(coalescer.getCoalescedCount(), is(1L));
+
+        coalescer.flush("repo\nbranch:master");
+        coalescer.flush("repo\nbranch:master");
+        coalescer.flush("repo\nbranch:feature");
+        assertThat(coalescer.fired, contains(second, other));
+        assertThat(coalescer.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void olderPushDoesNotReplacePendingOne() {
+        RecordingCoalescer coalescer = new RecordingCoalescer(60000);
+        // delivered out of order: the push from A to B arrives before the push that created A
+        SCMHeadEvent<?> newer = pushEvent(push("branch", "master", "A", "B"));
+        SCMHeadEvent<?> older = pushEvent(push("branch", "master", "0", "A"));
+
+        coalescer.fire("repo\nbranch:master", newer);
+        coalescer.fire("repo\nbranch:master", older);
+        coalescer.flush("repo\nbranch:master");
+        assertThat(coalescer.fired, contains(newer));
+
+        SCMHeadEvent<?> next = pushEvent(push("branch", "master", "B", "C"));
+        coalescer.fire("repo\nbranch:master", newer);
+        coalescer.fire("repo\nbranch:master", next);
+        coalescer.flush("repo\nbranch:master");
+        assertThat(coalescer.fired, contains(newer, next));
+    }
+
+    @Test
+    public void noWindowFiresImmediately() {
+        RecordingCoalescer coalescer = new RecordingCoalescer(0);
+        SCMHeadEvent<?> first = mock(SCMHeadEvent.class);
+        SCMHeadEvent<?> second = mock(SCMHeadEvent.class);
+
+        coalescer.fire("repo\nbranch:master", first);
+        coalescer.fire("repo\nbranch:master", second);
+        assertThat(coalescer.fired, contains(first, second));
+        assertThat(coalescer.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void keyIgnoresOwnerAndRepositoryCase() {
+        BitbucketRepository upper = repository("AMuniz", "Test-Repos");
+        BitbucketRepository lower = repository("amuniz", "test-repos");
+        assertThat(BitbucketEventCoalescer.keyOf(BitbucketType.CLOUD, upper, "branch:master"),
+                is(BitbucketEventCoalescer.keyOf(BitbucketType.CLOUD, lower, "branch:master")));
+        assertThat(BitbucketEventCoalescer.keyOf(BitbucketType.CLOUD, lower, "branch:master"),
+                not(BitbucketEventCoalescer.keyOf(BitbucketType.SERVER, lower, "branch:master")));
+    }
+
+    private static BitbucketPushEvent push(String type, String name, String from, String to) {
+        BitbucketPushEvent push = mock(BitbucketPushEvent.class);
+        BitbucketPushEvent.Change change = mock(BitbucketPushEvent.Change.class);
+        BitbucketPushEvent.Reference old = reference(type, name, from);
+        BitbucketPushEvent.Reference moved = reference(type, name, to);
+        when(change.getOld()).thenReturn(old);
+        when(change.getNew()).thenReturn(moved);
+        when(push.getChanges()).thenAnswer(new Returns(Collections.singletonList(change)));
+        return push;
+    }
+
+    private static BitbucketPushEvent.Reference reference(String type, String name, String hash) {
+        BitbucketPushEvent.Reference reference = mock(BitbucketPushEvent.Reference.class);
+        BitbucketPushEvent.Target target = mock(BitbucketPushEvent.Target.class);
+        when(target.getHash()).thenReturn(hash);
+        when(reference.getType()).thenReturn(type);
+        when(reference.getName()).thenReturn(name);
+        when(reference.getTarget()).thenReturn(target);
+        return reference;
+    }
+
+    private static SCMHeadEvent<BitbucketPushEvent> pushEvent(BitbucketPushEvent push) {
+        return new SCMHeadEvent<BitbucketPushEvent>(SCMEvent.Type.UPDATED, push, "test") {
+            @Override
+            public boolean isMatch(@NonNull SCMNavigator navigator) {
+                return false;
+            }
+
+            @NonNull
+            @Override
+            public String getSourceName() {
+                return "repo";
+            }
+
+            @NonNull
+            @Override
+            public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource source) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public boolean isMatch(@NonNull SCM scm) {
+                return false;
+            }
+        };
+    }
+
+    private static BitbucketRepository repository(String owner, String name) {
+        BitbucketRepository repository = mock(BitbucketRepository.class);
+        when(repository.getOwnerName()).thenReturn(owner);
+        when(repository.getRepositoryName()).thenReturn(name);
+        return repository;
+    }
+
+    private static class RecordingCoalescer extends BitbucketEventCoalescer {
+
+        private final List<SCMHeadEvent<?>> fired = new ArrayList<>();
+
+        RecordingCoalescer(long windowMillis) {
+            super(windowMillis);
+        }
+
+        @Override
+        void dispatch(SCMHeadEvent<?> event) {
+            fired.add(event);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2018, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.jenkins.plugins.bitbucket.hooks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BitbucketHookQueueTest {
+
+    @Test
+    public void fullQueueRefusesWebhooks() throws Exception {
+        BitbucketHookQueue queue = new BitbucketHookQueue(1, 10);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        Runnable quick = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        assertThat(queue.offer("owner/repo", 4, blocking), is(true));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertThat(queue.offer("owner/repo", 4, quick), is(true));
+        assertThat(queue.getDepth(), is(1));
+        assertThat(queue.getQueuedBytes(), is(8L));
+        assertThat(queue.offer("owner/other", 4, quick), is(false));
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertThat(queue.getAcceptedCount(), is(2L));
+        assertThat(queue.getRejectedCount(), is(1L));
+        assertThat(queue.offer("owner/repo", 4, quick), is(true));
+    }
+
+    @Test
+    public void failingWebhookIsCounted() throws Exception {
+        BitbucketHookQueue queue = new BitbucketHookQueue(1, 10);
+        final CountDownLatch done = new CountDownLatch(1);
+        queue.offer("owner/repo", 1, new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("malformed payload");
+            }
+        });
+        queue.offer("owner/repo", 1, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertThat(queue.getFailedCount(), is(1L));
+    }
+
+    @Test
+    public void webhooksOfARepositoryAreProcessedInOrder() throws Exception {
+        BitbucketHookQueue queue = new BitbucketHookQueue(4, 1000);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            final int index = i;
+            assertThat(queue.offer("owner/repo", 1, new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                    done.countDown();
+                }
+            }), is(true));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertThat(order.get(i), is(i));
+        }
+    }
+
+    @Test
+    public void oversizedWebhookIsTakenByAnIdleQueue() {
+        BitbucketHookQueue queue = new BitbucketHookQueue(1, 10);
+        assertThat(queue.offer("owner/repo", 100, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }), is(true));
+    }
+
+    @Test
+    public void repositoryOfPayload() {
+        assertThat(BitbucketHookQueue.repositoryOf(
+                "{\"push\":{\"changes\":[]},\"repository\":{\"name\":\"temp\",\"full_name\":\"CloudBeers/temp\"}}"),
+                is("cloudbeers/temp"));
+        assertThat(BitbucketHookQueue.repositoryOf(
+                "{\"actor\":{\"name\":\"admin\"},\"repository\":{\"slug\":\"rep_1\",\"fullName\":\"PROJECT_1/rep_1\"}}"),
+                is("project_1/rep_1"));
+        assertThat(BitbucketHookQueue.repositoryOf(
+                "{\"repository\":{\"slug\":\"rep_1\",\"project\":{\"key\":\"PROJECT_1\"}}}"),
+                is("project_1/rep_1"));
+        assertThat(BitbucketHookQueue.repositoryOf("{\"actor\":{}}"), is(""));
+        assertThat(BitbucketHookQueue.repositoryOf("not json"), is(""));
+    }
+}